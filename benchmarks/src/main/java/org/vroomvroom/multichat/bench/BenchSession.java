@@ -0,0 +1,35 @@
+package org.vroomvroom.multichat.bench;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.protocol.WireFormat;
+import org.vroomvroom.multichat.chat.server.ChatServer;
+import org.vroomvroom.multichat.chat.server.EncodedMessage;
+
+import java.nio.ByteBuffer;
+
+// a session without a socket, its "writer" takes every message right away and asks for the wire bytes
+// so the benchmarks pay for encoding but never for I/O or a full queue
+class BenchSession extends ClientSession {
+
+    ByteBuffer lastWritten;
+
+    BenchSession(String clientAddress, ChatServer server) {
+        super(clientAddress, server);
+    }
+
+    @Override
+    protected void onQueued() {
+        EncodedMessage message = outbound.poll();
+        if (message != null) {
+            lastWritten = message.buffer(WireFormat.LINE);
+        }
+    }
+
+    @Override
+    protected void pauseReads(long nanos) {
+    }
+
+    @Override
+    protected void closeTransport() {
+    }
+}
@@ -0,0 +1,69 @@
+package org.vroomvroom.multichat.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.server.ChatServer;
+import org.vroomvroom.multichat.chat.server.EncodedMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// one chat message to every member of a room, the loop BroadcastFanout runs per message
+// encodeOnce is today's path, encodePerRecipient is the old one (concat and encode for every client)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int recipients;
+
+    private List<ClientSession> members;
+    private String name = "alice";
+    private String text = "hello everybody, this is a fairly ordinary chat message";
+    private byte[] nameBytes;
+    private byte[] textBytes;
+
+    @Setup
+    public void setUp() {
+        ChatServer server = Servers.idle();
+        for (int i = 0; i < recipients; i++) {
+            BenchSession session = new BenchSession("10.0.0." + i, server);
+            session.enterRoom(server.getRooms().lobby(), false);
+            server.getClients().add(session);
+        }
+        // the same copy-on-write list the fan-out iterates
+        members = server.getClients();
+        nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        textBytes = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void encodeOnce() {
+        EncodedMessage message = EncodedMessage.chat(nameBytes, textBytes);
+        for (ClientSession member : members) {
+            member.deliver(message);
+        }
+    }
+
+    @Benchmark
+    public void encodePerRecipient() {
+        for (ClientSession member : members) {
+            member.deliver(EncodedMessage.ofLine(name + ": " + text));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.vroomvroom.multichat.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vroomvroom.multichat.chat.protocol.Handshake;
+
+import java.util.concurrent.TimeUnit;
+
+// first line parsing, once per connect but it runs for every client of a reconnect storm
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandshakeBenchmark {
+
+    // fields, not constants, so the JIT can't fold the parse away
+    private String clientInfo = "CLIENT_INFO:42:alice";
+    private String binaryHello = "MULTICHAT/2:42:1234:alice";
+    private String clientId = "CLIENT_ID:42";
+
+    @Benchmark
+    public Handshake clientInfo() {
+        return Handshake.parse(clientInfo);
+    }
+
+    @Benchmark
+    public Handshake binaryHello() {
+        return Handshake.parse(binaryHello);
+    }
+
+    @Benchmark
+    public Handshake legacyClientId() {
+        return Handshake.parse(clientId);
+    }
+}
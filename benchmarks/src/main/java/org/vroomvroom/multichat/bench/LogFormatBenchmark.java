@@ -0,0 +1,47 @@
+package org.vroomvroom.multichat.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vroomvroom.multichat.chat.log.TimestampFormat;
+import org.vroomvroom.multichat.chat.server.ConsoleServerListener;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// "[HH:mm:ss] text" log lines without any UI
+// simpleDateFormat is what the message views used to do per visible row, timestampFormat is the cached
+// seconds prefix they use now, consoleListener the headless server log on top of it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogFormatBenchmark {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
+    private String message = "alice (127.0.0.1:50136) has joined the chat";
+
+    @Benchmark
+    public String simpleDateFormat() {
+        return "[" + dateFormat.format(new Date(System.currentTimeMillis())) + "] " + message;
+    }
+
+    @Benchmark
+    public String timestampFormat() {
+        return "[" + TimestampFormat.TIME.format(System.currentTimeMillis()) + "] " + message;
+    }
+
+    @Benchmark
+    public String consoleListener() {
+        return ConsoleServerListener.formatLine(System.currentTimeMillis(), message);
+    }
+}
@@ -0,0 +1,53 @@
+package org.vroomvroom.multichat.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vroomvroom.multichat.chat.protocol.Frame;
+import org.vroomvroom.multichat.chat.protocol.FrameType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// "name: message" as wire bytes, the old string concat against the byte level renderers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFormatBenchmark {
+
+    private String clientName = "alice";
+    private String message = "hello everybody, this is a fairly ordinary chat message";
+    private byte[] nameBytes;
+    private byte[] messageBytes;
+
+    @Setup
+    public void setUp() {
+        nameBytes = clientName.getBytes(StandardCharsets.UTF_8);
+        messageBytes = message.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] stringConcat() {
+        return (clientName + ": " + message + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] renderLine() {
+        return FrameType.CHAT.renderLine(nameBytes, messageBytes);
+    }
+
+    @Benchmark
+    public byte[] binaryFrame() {
+        return Frame.encode(FrameType.CHAT, nameBytes, messageBytes);
+    }
+}
@@ -0,0 +1,37 @@
+package org.vroomvroom.multichat.bench;
+
+import org.vroomvroom.multichat.chat.server.ChatServer;
+import org.vroomvroom.multichat.chat.server.JournalSettings;
+import org.vroomvroom.multichat.chat.server.LogSettings;
+import org.vroomvroom.multichat.chat.server.ServerConfig;
+import org.vroomvroom.multichat.chat.server.ServerListener;
+
+final class Servers {
+
+    static final ServerListener SILENT = new ServerListener() {
+        @Override
+        public void logMessage(String message) {
+        }
+
+        @Override
+        public void incrementClientCount() {
+        }
+
+        @Override
+        public void decrementClientCount() {
+        }
+    };
+
+    private Servers() {
+    }
+
+    // never started, only there so sessions have their settings and room registry
+    static ChatServer idle() {
+        ServerConfig config = ServerConfig.DEFAULT
+                .withPort(0)
+                .withMaxClients(Integer.MAX_VALUE)
+                .withJournal(JournalSettings.DISABLED)
+                .withLog(LogSettings.OFF);
+        return new ChatServer(config, SILENT);
+    }
+}
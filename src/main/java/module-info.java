@@ -1,6 +1,8 @@
 module org.vroomvroom.multichat {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management;
+    requires jdk.httpserver;
 
     opens org.vroomvroom.multichat.chat;
     exports org.vroomvroom.multichat.chat;
@@ -8,4 +10,8 @@ module org.vroomvroom.multichat {
     opens org.vroomvroom.multichat.chat.client;
     exports org.vroomvroom.multichat.chat.server;
     opens org.vroomvroom.multichat.chat.server;
+    exports org.vroomvroom.multichat.chat.protocol;
+    exports org.vroomvroom.multichat.chat.ui;
+    exports org.vroomvroom.multichat.chat.metrics;
+    exports org.vroomvroom.multichat.chat.log;
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package org.vroomvroom.multichat.chat;
+
+import org.vroomvroom.multichat.chat.metrics.MetricsHttpServer;
+import org.vroomvroom.multichat.chat.server.ChatServer;
+import org.vroomvroom.multichat.chat.server.ConsoleServerListener;
+import org.vroomvroom.multichat.chat.server.ServerConfig;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+// runs the server without any UI, nothing from JavaFX gets loaded on this path
+//   ServerLauncher [--config=server.properties] [--port=8080] [--transport=nio] ...
+// flags use the same keys as the properties file (see ServerConfig), flags win over the file
+public class ServerLauncher {
+
+    public static void main(String[] args) {
+        ServerConfig config;
+        int metricsPort;
+        try {
+            Properties properties = parseArgs(args);
+            config = ServerConfig.fromProperties(properties);
+            metricsPort = Integer.parseInt(properties.getProperty("metricsPort", "0"));
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Invalid configuration: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+            return;
+        }
+
+        ConsoleServerListener listener = new ConsoleServerListener();
+        ChatServer server = new ChatServer(config, listener);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (server.isRunning()) {
+                server.stopServer();
+            }
+            // the main thread may not get to it before the JVM is gone
+            server.getLog().close();
+        }, "server-shutdown"));
+
+        // off unless asked for, loopback only
+        if (metricsPort > 0) {
+            try {
+                MetricsHttpServer metricsServer = new MetricsHttpServer(server.getMetrics().registry(), metricsPort);
+                metricsServer.start();
+                server.getLog().info("Metrics on http://localhost:" + metricsServer.getPort() + "/metrics");
+            } catch (IOException e) {
+                server.getLog().warn("Metrics endpoint disabled, could not bind port " + metricsPort + ": " + e.getMessage());
+            }
+        }
+
+        server.getLog().info("Starting server on port " + config.port() + " (" + config.transportMode()
+                + ", max " + config.maxClients() + " clients)");
+        // accept loop runs right here, returns once the server is stopped
+        server.run();
+    }
+
+    static Properties parseArgs(String[] args) throws IOException {
+        Properties properties = new Properties();
+        Properties flags = new Properties();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--help") || arg.equals("-h")) {
+                printUsage();
+                System.exit(0);
+            }
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + arg);
+            }
+
+            String key;
+            String value;
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                key = arg.substring(2, equals);
+                value = arg.substring(equals + 1);
+            } else if (i + 1 < args.length) {
+                key = arg.substring(2);
+                value = args[++i];
+            } else {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+
+            if (key.equals("config")) {
+                try (Reader reader = Files.newBufferedReader(Path.of(value))) {
+                    properties.load(reader);
+                }
+            } else {
+                flags.setProperty(key, value);
+            }
+        }
+
+        properties.putAll(flags);
+        return properties;
+    }
+
+    private static void printUsage() {
+        System.err.println("""
+                Usage: ServerLauncher [--config=<file.properties>] [--key=value ...]
+                  --port=8080                  listen port
+                  --maxClients=10              admission limit
+                  --transport=blocking         blocking, virtual or nio
+                  --queueCapacity=256          outbound messages queued per client
+                  --slowConsumerPolicy=drop_oldest   drop_oldest, coalesce or disconnect
+                  --disconnectThreshold=64     overflows before a slow client is dropped (disconnect policy)
+                  --flushDelay=0               ms a writer waits to gather more messages into one write
+                  --journal=true               keep a message journal
+                  --journalDir=journal         where the journal lives
+                  --replayCount=50             history replayed to joining clients
+                  --logLevel=debug             debug (every relayed message), info, warn or error
+                  --log=listener               listener (stdout), file, both or none
+                  --logDir=logs                where the rotating server.log files go
+                  --pingInterval=15            seconds of client silence before a ping (v3 clients), 0 = off
+                  --idleTimeout=45             seconds of silence before a session is reaped, 0 = off
+                  --rateLimit=20               chat messages and commands per second per client, 0 = off
+                  --rateBurst=40               per client burst
+                  --globalRateLimit=0          messages per second over all clients, 0 = off
+                  --globalRateBurst=0          global burst
+                  --rateLimitPolicy=delay      what happens over a limit: delay (pause reads), drop or disconnect
+                  --nodeId=0                   this node's id, unique per node and 1 or more once clusterPort is set
+                  --clusterPort=0              port peers connect to, 0 = no cluster
+                  --peers=                     other nodes as host:port,host:port
+                  --compressThreshold=512      deflate bodies at least this many bytes for v4 clients that ask, 0 = off
+                  --compressLevel=6            deflate level, 1 (fast) to 9 (small)
+                  --metricsPort=0              serve GET /metrics as JSON on localhost, 0 = off""");
+    }
+}
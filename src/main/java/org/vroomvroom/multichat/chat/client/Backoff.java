@@ -0,0 +1,33 @@
+package org.vroomvroom.multichat.chat.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// reconnect delays: doubling from initialMillis up to maxMillis, each one randomized to somewhere in its upper half
+// so a whole room of tabs that lost the same server doesn't come back in lockstep
+// not thread safe, each reconnect loop has its own
+public class Backoff {
+
+    private final long initialMillis;
+    private final long maxMillis;
+    private int attempt = 0;
+
+    public Backoff(long initialMillis, long maxMillis) {
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    public long nextDelayMillis() {
+        long ceiling = Math.min(maxMillis, initialMillis << Math.min(attempt, 20));
+        attempt++;
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    public int attempts() {
+        return attempt;
+    }
+
+    public void reset() {
+        attempt = 0;
+    }
+}
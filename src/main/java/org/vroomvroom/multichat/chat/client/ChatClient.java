@@ -1,118 +1,446 @@
 package org.vroomvroom.multichat.chat.client;
 
-import javafx.application.Platform;
-import java.io.BufferedReader;
+import org.vroomvroom.multichat.chat.protocol.Frame;
+import org.vroomvroom.multichat.chat.protocol.FrameType;
+import org.vroomvroom.multichat.chat.protocol.Protocol;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ChatClient {
 
+    private static final long RECONNECT_INITIAL_MS = 250;
+    private static final long RECONNECT_MAX_MS = 30_000;
+    // typed while the connection was down, the oldest go first beyond this
+    private static final int MAX_OUTBOX = 100;
+
+    private final String host;
     private final int port;
-    private final ClientTabController controller;
+    private final ClientListener controller;
     private final int clientId;
     private final String clientName;
+    private final ClientOptions options;
     private Socket socket;
-    private PrintWriter output;
-    private BufferedReader input;
+    private WireWriter output;
+    private WireReader input;
     private Thread receiveThread;
     private volatile boolean isConnected = false;
+    // set once by disconnect(), the only thing that stops an auto reconnecting client
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    // socket swaps on reconnect and sends/the outbox, so a message typed mid reconnect lands after the queued ones
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final ArrayDeque<String> outbox = new ArrayDeque<>();
+    private final Backoff backoff = new Backoff(RECONNECT_INITIAL_MS, RECONNECT_MAX_MS);
+    private volatile Thread reconnectThread;
+    // binary v2 only, the server's sequence on every broadcast; replayed copies we already showed are dropped
+    private final SequenceTracker sequences = new SequenceTracker();
+    // receive thread only
+    private final Roster roster = new Roster();
+    private volatile long lastSequence = 0;
 
     // uses the controller to manage the chat
-    public ChatClient( int port, ClientTabController controller, int clientId, String clientName) {
+    public ChatClient( int port, ClientListener controller, int clientId, String clientName) {
+        this(port, controller, clientId, clientName, ClientOptions.DEFAULT);
+    }
+
+    public ChatClient( int port, ClientListener controller, int clientId, String clientName, ClientOptions options) {
+        this("localhost", port, controller, clientId, clientName, options);
+    }
+
+    public ChatClient(String host, int port, ClientListener controller, int clientId, String clientName, ClientOptions options) {
+        this.host = host;
         this.port = port;
         this.controller = controller;
         this.clientId = clientId;
         this.clientName = clientName;
+        this.options = options;
     }
 
     public void start() {
         try {
-            // hardcoded localhost
-            socket = new Socket("localhost",port);
-            output = new PrintWriter(socket.getOutputStream(), true);
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            connect();
+        } catch (IOException e) {
+            controller.displayMessage("SYSTEM", "Connection failed: " + e.getMessage());
+            if (options.autoReconnect()) {
+                // keep the caller (the FX thread) out of the backoff sleeps
+                Thread.ofPlatform().daemon().name("client-" + clientId + "-reconnect").start(this::reconnectLoop);
+            } else {
+                disconnect();
+            }
+        }
+    }
+
+    // socket, handshake, whatever was typed while we were away, then the receive thread
+    private void connect() throws IOException {
+        // localhost unless somebody asked for another host (load generator)
+        Socket newSocket = new Socket(host, port);
+        try {
+            WireWriter newOutput = new WireWriter(newSocket.getOutputStream());
+            WireReader newInput = new WireReader(newSocket.getInputStream());
 
             // send client ID  to server as first message
             // this is all to avoid clients having a different number on tab title and inner client
-            output.println("CLIENT_INFO:" + clientId + ":" + clientName);
+            if (options.binaryFrames()) {
+                // a reconnect asks for what it missed since the last sequence it showed
+                newOutput.println(Protocol.helloLine(clientId, clientName, sequences.highest(), options.compression()));
+            } else {
+                newOutput.println("CLIENT_INFO:" + clientId + ":" + clientName);
+            }
 
-            isConnected = true;
+            sendLock.lock();
+            try {
+                socket = newSocket;
+                output = newOutput;
+                input = newInput;
+                flushOutbox();
+                isConnected = true;
+            } finally {
+                sendLock.unlock();
+            }
+        } catch (IOException e) {
+            closeQuietly(newSocket);
+            throw e;
+        }
 
-            // start thread
-            receiveThread = new Thread(this::receiveMessages);
+        // start thread, virtual ones are always daemon
+        WireReader reader = input;
+        if (options.virtualThread()) {
+            receiveThread = Thread.ofVirtual().name("client-" + clientId + "-receive").start(() -> receiveMessages(reader));
+        } else {
+            receiveThread = new Thread(() -> receiveMessages(reader));
             receiveThread.setDaemon(true);
             receiveThread.start();
+        }
 
-            System.out.println("DEBUG: Sent CLIENT_ID:" + clientId + " to server");
+        controller.updateStatus("Connected", "green");
+    }
 
+    private void receiveMessages(WireReader reader) {
+        String error = null;
+        try {
+            // message input loop
+            if (options.binaryFrames()) {
+                // the read timeout is the server's ping interval once the ACK told us; quiet that long we ping,
+                // quiet that long again and the server is gone
+                boolean pinged = false;
+                while (isConnected) {
+                    Frame frame;
+                    try {
+                        frame = reader.readFrame();
+                    } catch (SocketTimeoutException e) {
+                        if (pinged) {
+                            throw new IOException("Server stopped answering pings");
+                        }
+                        pinged = true;
+                        sendControl(FrameType.PING);
+                        continue;
+                    }
+                    if (frame == null) {
+                        break;
+                    }
+                    pinged = false;
+                    handleFrame(frame);
+                }
+            } else {
+                String message;
+                while (isConnected && (message = reader.readLine()) != null) {
+                    controller.handleServerMessage(message);
+                }
+            }
         } catch (IOException e) {
-            Platform.runLater(() ->
-                    controller.displayMessage("SYSTEM", "Connection failed: " + e.getMessage())
-            );
+            error = e.getMessage();
+        }
+
+        if (closed.get()) {
+            // disconnect() closed the socket under us, it already cleaned up
+            return;
+        }
+        if (options.autoReconnect()) {
+            dropConnection();
+            controller.displayMessage("SYSTEM", "Connection lost" + (error != null ? ": " + error : "") + ", reconnecting...");
+            // this receive thread is done anyway, it can do the waiting
+            reconnectLoop();
+        } else {
+            if (error != null && isConnected) {
+                controller.displayMessage("SYSTEM", "Connection lost: " + error);
+            }
             disconnect();
         }
     }
 
-    private void receiveMessages() {
+    // until connected again or disconnect() interrupts the sleep
+    private void reconnectLoop() {
+        reconnectThread = Thread.currentThread();
         try {
-            // message input loop
-            String message;
-            while (isConnected && (message = input.readLine()) != null) {
-                final String msg = message;
-                Platform.runLater(() -> controller.handleServerMessage(msg));
+            while (!closed.get()) {
+                long delay = backoff.nextDelayMillis();
+                controller.updateStatus(String.format(Locale.ROOT, "Reconnecting in %.1fs (attempt %d)",
+                        delay / 1000.0, backoff.attempts()), "orange");
+                Thread.sleep(delay);
+                try {
+                    connect();
+                } catch (IOException e) {
+                    continue;
+                }
+                if (closed.get()) {
+                    // disconnect() ran while we were connecting
+                    dropConnection();
+                    return;
+                }
+                controller.displayMessage("SYSTEM", "Reconnected after " + backoff.attempts() + " attempt(s)");
+                backoff.reset();
+                return;
             }
-        } catch (IOException e) {
-            if (isConnected) {
-                Platform.runLater(() ->
-                        controller.displayMessage("SYSTEM", "Connection lost: " + e.getMessage())
-                );
+        } catch (InterruptedException e) {
+            // disconnect()
+        } finally {
+            reconnectThread = null;
+        }
+    }
+
+    // sendLock held, the new connection's output; anything left over on failure stays queued
+    private void flushOutbox() throws IOException {
+        int count = outbox.size();
+        String message;
+        while ((message = outbox.peek()) != null) {
+            write(message);
+            outbox.poll();
+        }
+        if (count > 0) {
+            controller.displayMessage("SYSTEM", "Sent " + count + " message(s) typed while disconnected");
+        }
+    }
+
+    // sendLock held
+    private void queueForReconnect(String message) {
+        if (outbox.size() >= MAX_OUTBOX) {
+            outbox.poll();
+        }
+        outbox.add(message);
+    }
+
+    // the connection is gone but the client isn't, sends queue up from here on
+    private void dropConnection() {
+        sendLock.lock();
+        try {
+            isConnected = false;
+            if (output != null) {
+                output.close();
             }
+            closeQuietly(socket);
         } finally {
-            disconnect();
+            sendLock.unlock();
         }
+        // the snapshot after the reconnect brings it back
+        controller.rosterChanged(Map.of());
     }
 
-    public void sendMessage(String message) {
-        if (output != null && isConnected) {
-            output.println(message);
+    private static void closeQuietly(Socket target) {
+        try {
+            if (target != null && !target.isClosed()) {
+                target.close();
+            }
+        } catch (IOException ignored) {
+            // going away anyway
         }
     }
 
-    public void disconnect() {
-        isConnected = false;
+    private void handleFrame(Frame frame) throws IOException {
+        switch (frame.type()) {
+            case ACK -> {
+                handleAck(frame.bodyText());
+                return;
+            }
+            case PING -> {
+                sendControl(FrameType.PONG);
+                return;
+            }
+            case PONG -> {
+                // reading it already reset the timeout
+                return;
+            }
+            case ROSTER -> {
+                roster.apply(frame.subjectText(), frame.bodyText());
+                controller.rosterChanged(roster.entries());
+                return;
+            }
+            default -> {
+            }
+        }
+        if (!sequences.accept(frame.sequence())) {
+            return;
+        }
+        lastSequence = sequences.highest();
+        controller.handleServerMessage(frame.render());
+    }
 
-        if (output != null) {
-            output.close();
+    // handshake answer, "<version>:<clientId>", from v2 on ":<server's last sequence>", from v3 on ":<ping interval>",
+    // from v4 on ":<compression threshold>"
+    private void handleAck(String ack) throws IOException {
+        String[] parts = ack.split(":", 5);
+        String resumed = "";
+        long serverSequence = -1;
+        if (parts.length >= 3) {
+            try {
+                serverSequence = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                // not worth dropping the connection over, we just can't tell
+            }
+        }
+        if (serverSequence >= 0) {
+            if (serverSequence < sequences.highest()) {
+                // server lost its numbering (no journal across a restart), what we remember means nothing now
+                sequences.reset();
+                lastSequence = 0;
+                resumed = ", server history restarted";
+            } else if (sequences.highest() > 0) {
+                resumed = ", resuming after #" + sequences.highest();
+            }
+        }
+        if (parts.length >= 4) {
+            try {
+                int pingSeconds = Integer.parseInt(parts[3]);
+                if (pingSeconds > 0) {
+                    socket.setSoTimeout(pingSeconds * 1000);
+                }
+            } catch (NumberFormatException e) {
+                // no heartbeat then, same as an older server
+            }
+        }
+        String compressed = "";
+        if (parts.length >= 5) {
+            try {
+                int threshold = Integer.parseInt(parts[4]);
+                if (threshold > 0) {
+                    compressed = ", messages over " + threshold + " bytes compressed";
+                }
+            } catch (NumberFormatException e) {
+                // uncompressed then, frames say so themselves anyway
+            }
         }
+        controller.displayMessage("SYSTEM", "Binary protocol v" + parts[0] + resumed + compressed);
+    }
 
+    // heartbeat frames from the receive thread, same lock as chat so they never interleave
+    private void sendControl(FrameType type) throws IOException {
+        sendLock.lock();
         try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
+            if (isConnected && output != null) {
+                output.writeFrame(Frame.of(type, ""));
             }
-        } catch (IOException e) {
-            System.out.println("Well, shit");
+        } finally {
+            sendLock.unlock();
         }
+    }
+
+    // before start(), a new client picking up where an earlier connection left off
+    public void resumeAfter(long sequence) {
+        sequences.seed(sequence);
+        lastSequence = sequences.highest();
+    }
 
+    public void sendMessage(String message) {
+        if (closed.get()) {
+            return;
+        }
+        boolean failed = false;
+        sendLock.lock();
         try {
-            if (input != null) {
-                input.close();
+            if (!isConnected || output == null) {
+                if (options.autoReconnect()) {
+                    queueForReconnect(message);
+                }
+                return;
             }
+            write(message);
         } catch (IOException e) {
-            System.out.println("Thats awkward...");
+            if (options.autoReconnect()) {
+                // the receive thread trips over the closed socket and reconnects, this one goes out after that
+                queueForReconnect(message);
+                closeQuietly(socket);
+            } else {
+                controller.displayMessage("SYSTEM", "Send failed: " + e.getMessage());
+                failed = true;
+            }
+        } finally {
+            sendLock.unlock();
         }
+        if (failed) {
+            disconnect();
+        }
+    }
 
-        Platform.runLater(() -> {
-            controller.displayMessage("SYSTEM", "Disconnected from server");
-            controller.updateStatus("Disconnected", "red");
-        });
+    private void write(String message) throws IOException {
+        if (options.binaryFrames()) {
+            output.writeFrame(Frame.of(FrameType.CHAT, message));
+        } else {
+            output.println(message);
+        }
+    }
+
+    public void disconnect() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        Thread reconnecting = reconnectThread;
+        if (reconnecting != null && reconnecting != Thread.currentThread()) {
+            reconnecting.interrupt();
+        }
+
+        sendLock.lock();
+        try {
+            // polite goodbye for binary servers, text ones just see the socket close
+            if (isConnected && options.binaryFrames() && output != null) {
+                try {
+                    output.writeFrame(Frame.of(FrameType.LEAVE, ""));
+                } catch (IOException ignored) {
+                    // closing anyway
+                }
+            }
+            isConnected = false;
+            outbox.clear();
+
+            if (output != null) {
+                output.close();
+            }
+
+            try {
+                if (socket != null && !socket.isClosed()) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                System.out.println("Well, shit");
+            }
+        } finally {
+            sendLock.unlock();
+        }
+
+        // both go through the tab's update queue, no runLater needed
+        controller.displayMessage("SYSTEM", "Disconnected from server");
+        controller.updateStatus("Disconnected", "red");
+        controller.rosterChanged(Map.of());
     }
 
     public boolean isConnected() {
         return isConnected;
     }
 
+    // down but coming back, sends are queued until then
+    public boolean isReconnecting() {
+        return options.autoReconnect() && !isConnected && !closed.get();
+    }
+
+    // highest broadcast sequence shown so far, 0 for text connections
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
     public int getClientId() {
         return clientId;
     }
@@ -1,145 +1,122 @@
 package org.vroomvroom.multichat.chat.client;
 
-import org.vroomvroom.multichat.chat.server.ServerTabController;
+import org.vroomvroom.multichat.chat.protocol.Frame;
+import org.vroomvroom.multichat.chat.server.ChatServer;
+import org.vroomvroom.multichat.chat.server.DisconnectReason;
+import org.vroomvroom.multichat.chat.server.EncodedMessage;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-public class ClientHandler implements Runnable {
+// blocking transport, a reader and a writer thread per client (platform or virtual, whatever executor runs it)
+public class ClientHandler extends ClientSession implements Runnable {
 
-    private final Socket socket;
-    private int clientId = 0;
-    private final CopyOnWriteArrayList<ClientHandler> clients;
-    private final ServerTabController controller;
-    private PrintWriter output;
-    private BufferedReader input;
-    private String clientAddress;
-    private boolean isConnected = true;
+    // messages per write, the byte limit is the writer's batch buffer
+    private static final int MAX_BATCH = 256;
 
-    private String clientName = "Unknown";
+    private final Socket socket;
+    private WireWriter output;
+    private WireReader input;
+    private volatile Thread writerThread;
 
 
     // controls the basic socket logic, to coordinate with the server
-    public ClientHandler(Socket socket, CopyOnWriteArrayList<ClientHandler> clients, ServerTabController controller) {
+    public ClientHandler(Socket socket, ChatServer server) {
+        super(socket.getInetAddress().getHostAddress() + ":" + socket.getPort(), server);
         this.socket = socket;
-        this.clients = clients;
-        this.controller = controller;
-        this.clientAddress = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
     }
 
     @Override
     public void run() {
+        DisconnectReason reason = DisconnectReason.CLIENT_CLOSED;
         try {
 
             // in/out setting
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            output = new PrintWriter(socket.getOutputStream(), true);
+            input = new WireReader(socket.getInputStream());
+            output = new WireWriter(socket.getOutputStream());
+
+            // writer drains our outbound queue, the reader below never writes to the socket itself
+            server.getClientPool().execute(this::writeLoop);
 
             // setting ID
             // chatClient, line 34
-            controller.logMessage("Waiting for client ID from: " + clientAddress);
-            String firstMessage = input.readLine();
-            controller.logMessage("Received from client: " + firstMessage);
-
-            if (firstMessage != null) {
-                if (firstMessage.startsWith("CLIENT_INFO:")) {
-                    try {
-                        String info = firstMessage.substring(12).trim();
-                        String[] parts = info.split(":", 2);
-
-                        if (parts.length >= 1) {
-                            this.clientId = Integer.parseInt(parts[0]);
-                        }
-
-                        if (parts.length >= 2) {
-                            this.clientName = parts[1];
-                        }
-
-                        controller.logMessage("Successfully parsed client info - ID: " + clientId + ", Name: " + clientName + " from " + clientAddress);
-                    } catch (NumberFormatException e) {
-                        controller.logMessage("Invalid client info format: " + firstMessage + ". Using fallback.");
-                        this.clientId = clients.size() + 1;
-                    }
-                } else if (firstMessage.startsWith("CLIENT_ID:")) {
-                    // Handle old format for backward compatibility
-                    try {
-                        String idStr = firstMessage.substring(10).trim();
-                        this.clientId = Integer.parseInt(idStr);
-                        controller.logMessage("Received old CLIENT_ID format, assigned ID: " + clientId);
-                    } catch (NumberFormatException e) {
-                        controller.logMessage("Invalid client ID format: " + firstMessage + ". Using fallback.");
-                        this.clientId = clients.size() + 1;
-                    }
+            log.debug("Waiting for client ID from: " + clientAddress);
+            handleLine(input.readLine());
+
+            if (isBinary()) {
+                Frame frame;
+                while (isConnected() && (frame = input.readFrame()) != null) {
+                    handleFrame(frame);
                 }
             } else {
-                // use sequential ID if client doesn't send ID
-                // shouldnt actually happen, but you know...
-                this.clientId = clients.size() + 1;
-                controller.logMessage("No CLIENT_ID received. Assigned ID: " + clientName + " to " + clientAddress);
+                String message;
+                while (isConnected() && (message = input.readLine()) != null) {
+                    handleLine(message);
+                }
             }
 
-            output.println("SERVER: Welcome to MultiChat! You are client #" + clientId);
-            broadcast(clientName + " (" + clientAddress + ") has joined the chat", null);
-
-            controller.logMessage(clientName+ " connected from " + clientAddress);
-
-            String message;
-            while (isConnected && (message = input.readLine()) != null) {
-                String formattedMessage = clientName+ ": " + message;
-                controller.logMessage(formattedMessage);
-                broadcast(formattedMessage, this);
+        } catch (IOException e) {
+            if (isConnected()) {
+                log.warn("Error with client #" + clientId + ": " + e.getMessage());
             }
+            reason = DisconnectReason.IO_ERROR;
+        } finally {
+            disconnect(reason);
+        }
+    }
 
-        } catch (IOException e) {
-            if (isConnected) {
-                controller.logMessage("Error with client #" + clientId + ": " + e.getMessage());
+    // everything queued (and whatever arrives within the flush delay) goes out in one write
+    private void writeLoop() {
+        writerThread = Thread.currentThread();
+        List<EncodedMessage> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (isConnected()) {
+                outbound.takeBatch(batch, MAX_BATCH);
+                metrics.socketWrites.add(output.writeBatch(batch, wireFormat));
+                batch.clear();
             }
+        } catch (InterruptedException e) {
+            // closeTransport, nothing left to write to
+        } catch (IOException e) {
+            // closing the socket wakes our reader, which does the actual disconnect
+            closeTransport();
         } finally {
-            disconnect();
+            writerThread = null;
+            outbound.clear();
         }
     }
 
-    public void sendMessage(String message) {
-        if (output != null && isConnected) {
-            output.println(message);
+    // we are the reader, sleeping is all it takes
+    @Override
+    protected void pauseReads(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    public void disconnect() {
-        if (!isConnected) return;
+    @Override
+    protected void onQueued() {
+        // writer is parked in take(), the queue wakes it
+    }
 
-        isConnected = false;
-        clients.remove(this);
-        controller.decrementClientCount();
-        broadcast("SERVER: Client " + clientName + " has left the chat", null);
-        controller.logMessage(clientName + " disconnected");
+    @Override
+    protected void closeTransport() {
+        Thread writer = writerThread;
+        if (writer != null && writer != Thread.currentThread()) {
+            writer.interrupt();
+        }
 
         try {
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
         } catch (IOException e) {
-            controller.logMessage("Error closing socket for client #" + clientId + ": " + e.getMessage());
-        }
-    }
-
-    private void broadcast(String message, ClientHandler sender) {
-        for (ClientHandler client : clients) {
-            if (client != sender) {
-                client.sendMessage(message);
-            }
+            log.warn("Error closing socket for client #" + clientId + ": " + e.getMessage());
         }
     }
-
-    public int getClientId() {
-        return clientId;
-    }
-
-    public String getClientAddress() {
-        return clientAddress;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,19 @@
+package org.vroomvroom.multichat.chat.client;
+
+import java.util.Map;
+
+// what ChatClient reports back, the client tab shows it, the load generator measures it
+// called from the receive thread, implementations must be thread safe
+public interface ClientListener {
+
+    // one rendered line from the server
+    void handleServerMessage(String message);
+
+    void displayMessage(String sender, String message);
+
+    void updateStatus(String status, String color);
+
+    // who is online, name -> room sorted by name, after every roster frame (v5 servers only) and empty once disconnected
+    default void rosterChanged(Map<String, String> roster) {
+    }
+}
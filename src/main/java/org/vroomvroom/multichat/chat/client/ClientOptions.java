@@ -0,0 +1,17 @@
+package org.vroomvroom.multichat.chat.client;
+
+// per-tab connection switches, picked in the client tab before connecting
+// autoReconnect keeps retrying with backoff when the connection drops, until disconnect() is called
+// compression asks the server for deflated frames, binary frames only (the server may still say no)
+public record ClientOptions(boolean virtualThread, boolean binaryFrames, boolean autoReconnect, boolean compression) {
+
+    public static final ClientOptions DEFAULT = new ClientOptions(false, false, false, false);
+
+    public ClientOptions(boolean virtualThread, boolean binaryFrames) {
+        this(virtualThread, binaryFrames, false);
+    }
+
+    public ClientOptions(boolean virtualThread, boolean binaryFrames, boolean autoReconnect) {
+        this(virtualThread, binaryFrames, autoReconnect, false);
+    }
+}
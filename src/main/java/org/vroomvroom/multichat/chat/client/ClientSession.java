@@ -0,0 +1,542 @@
+package org.vroomvroom.multichat.chat.client;
+
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+import org.vroomvroom.multichat.chat.protocol.Frame;
+import org.vroomvroom.multichat.chat.protocol.Handshake;
+import org.vroomvroom.multichat.chat.protocol.Protocol;
+import org.vroomvroom.multichat.chat.protocol.WireFormat;
+import org.vroomvroom.multichat.chat.server.ChatRoom;
+import org.vroomvroom.multichat.chat.server.ChatServer;
+import org.vroomvroom.multichat.chat.server.DisconnectReason;
+import org.vroomvroom.multichat.chat.server.EncodedMessage;
+import org.vroomvroom.multichat.chat.server.OutboundQueue;
+import org.vroomvroom.multichat.chat.server.RateLimitPolicy;
+import org.vroomvroom.multichat.chat.server.RateLimiter;
+import org.vroomvroom.multichat.chat.server.RoomRegistry;
+import org.vroomvroom.multichat.chat.server.SearchIndex;
+import org.vroomvroom.multichat.chat.server.ServerMetrics;
+import org.vroomvroom.multichat.chat.server.ServerListener;
+import org.vroomvroom.multichat.chat.server.SessionIndex;
+import org.vroomvroom.multichat.chat.server.TokenBucket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// protocol side of a connected client, shared by the blocking and the NIO transport
+// the transport only has to feed it lines (or frames, once binary) and know how to write/close
+public abstract class ClientSession {
+
+    protected int clientId = 0;
+    protected String clientName = "Unknown";
+    protected final String clientAddress;
+    protected final ChatServer server;
+    protected final CopyOnWriteArrayList<ClientSession> clients;
+    protected final ServerListener listener;
+    protected final AsyncLog log;
+    protected final ServerMetrics metrics;
+    // bounded, drained by the transport's own writer so a slow reader only hurts itself
+    protected final OutboundQueue outbound;
+    // CAS instead of a monitor, disconnect can race between the reader and a failed write
+    private final AtomicBoolean connected = new AtomicBoolean(true);
+    // the idle reaper reads these from its own thread
+    private volatile boolean handshakeDone = false;
+    private volatile long lastActivityNanos = System.nanoTime();
+    // negotiated binary version, 0 for text clients
+    private volatile int protocolVersion = 0;
+    // set by the handshake, the transports read and write frames instead of lines once it is binary
+    protected volatile WireFormat wireFormat = WireFormat.LINE;
+    // last sequence a reconnecting v2 client already has, 0 for a fresh join
+    private long resumeAfter = 0;
+    // the fan-out skips us until the handshake settled the wire format
+    private volatile boolean ready = false;
+    private byte[] nameBytes;
+    // live broadcasts that arrive while history is replayed, released right after it so order holds
+    private volatile boolean replaying = false;
+    private final ReentrantLock replayLock = new ReentrantLock();
+    private final ArrayDeque<EncodedMessage> heldDuringReplay = new ArrayDeque<>();
+    private volatile long replayToken = 0;
+    private volatile ChatRoom room;
+    private final RateLimiter rateLimiter;
+    // null without a per-client limit, only the reading thread touches it
+    private final TokenBucket rateBucket;
+    private volatile long throttledCount = 0;
+    private long lastThrottleNotice = 0;
+
+    protected ClientSession(String clientAddress, ChatServer server) {
+        this.clientAddress = clientAddress;
+        this.server = server;
+        this.clients = server.getClients();
+        this.listener = server.getListener();
+        this.log = server.getLog();
+        this.metrics = server.getMetrics();
+        this.outbound = server.getOutboundSettings().newQueue();
+        this.rateLimiter = server.getRateLimiter();
+        this.rateBucket = rateLimiter.newClientBucket();
+    }
+
+    // first line is the handshake, everything after it is chat
+    protected void handleLine(String line) {
+        lastActivityNanos = System.nanoTime();
+        if (!handshakeDone) {
+            handshakeDone = true;
+            handleHandshake(line);
+        } else {
+            handleChat(line);
+        }
+    }
+
+    protected void handleHandshake(String firstMessage) {
+        log.debug("Received from client: " + firstMessage);
+
+        if (firstMessage != null) {
+            try {
+                Handshake handshake = Handshake.parse(firstMessage);
+                if (handshake != null) {
+                    this.clientId = handshake.clientId();
+                    if (handshake.clientName() != null) {
+                        this.clientName = handshake.clientName();
+                    }
+
+                    switch (handshake.format()) {
+                        case BINARY -> {
+                            // ack goes out as the very first frame so the client knows what we settled on
+                            int version = Protocol.negotiate(handshake.version());
+                            this.protocolVersion = version;
+                            boolean compress = handshake.compression() && version >= Protocol.COMPRESSION_VERSION
+                                    && server.getCompression().enabled();
+                            this.wireFormat = compress ? WireFormat.COMPRESSED_FRAME : WireFormat.forVersion(version);
+                            this.resumeAfter = version >= Protocol.SEQUENCE_VERSION ? handshake.resumeAfter() : 0;
+                            // v2 adds the server's current sequence, a client ahead of it knows the numbering started over
+                            send(EncodedMessage.ack(ackText(version)));
+                            log.debug("Binary protocol v" + version + " - ID: " + clientId + ", Name: " + clientName + " from " + clientAddress
+                                    + (resumeAfter > 0 ? ", resuming after #" + resumeAfter : "") + (compress ? ", compressed" : ""));
+                        }
+                        case CLIENT_INFO -> log.debug("Successfully parsed client info - ID: " + clientId + ", Name: " + clientName + " from " + clientAddress);
+                        // Handle old format for backward compatibility
+                        case CLIENT_ID -> log.debug("Received old CLIENT_ID format, assigned ID: " + clientId);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid handshake: " + firstMessage + ". Using fallback.");
+                this.clientId = clients.size() + 1;
+            }
+        } else {
+            // use sequential ID if client doesn't send ID
+            // shouldnt actually happen, but you know...
+            this.clientId = clients.size() + 1;
+            log.warn("No CLIENT_ID received. Assigned ID: " + clientName + " to " + clientAddress);
+        }
+
+        String wantedName = SessionIndex.clip(clientName, SessionIndex.MAX_NAME_LENGTH);
+        clientName = server.getSessions().register(this, wantedName);
+        if (!isConnected()) {
+            // dropped while we were registering, disconnect() may have looked before we were in
+            // and has already said we left, so no welcome, admit or join after that
+            server.getSessions().unregister(this);
+            return;
+        }
+
+        nameBytes = clientName.getBytes(StandardCharsets.UTF_8);
+        sendMessage("SERVER: Welcome to MultiChat! You are client #" + clientId);
+        if (!clientName.equals(wantedName)) {
+            sendMessage("SERVER: The name " + wantedName + " is taken, you are " + clientName + " here");
+        }
+        server.getFanout().admit(this, resumeAfter);
+        broadcast(EncodedMessage.join(clientName, clientAddress), true);
+
+        log.info(clientName + " connected from " + clientAddress);
+    }
+
+    // "<version>:<id>", v2 adds the server's last sequence, v3 our ping interval and v4 the compression threshold
+    private String ackText(int version) {
+        String ack = version + ":" + clientId;
+        if (version >= Protocol.SEQUENCE_VERSION) {
+            ack += ":" + server.getFanout().lastSequence();
+        }
+        if (version >= Protocol.HEARTBEAT_VERSION) {
+            ack += ":" + server.getConfig().heartbeat().pingIntervalSeconds();
+        }
+        if (version >= Protocol.COMPRESSION_VERSION) {
+            ack += ":" + (wireFormat == WireFormat.COMPRESSED_FRAME ? server.getCompression().threshold() : 0);
+        }
+        return ack;
+    }
+
+    protected void handleChat(String message) {
+        handleText(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // binary clients only, after the handshake
+    protected void handleFrame(Frame frame) {
+        lastActivityNanos = System.nanoTime();
+        switch (frame.type()) {
+            case CHAT -> handleText(frame.body());
+            case LEAVE -> disconnect(DisconnectReason.CLIENT_LEFT);
+            // the client wondering whether we are still there, any frame (a pong too) already counted as activity
+            case PING -> sendControl(EncodedMessage.PONG);
+            default -> {
+                // nothing else is meaningful coming from a client
+            }
+        }
+    }
+
+    private void handleText(byte[] text) {
+        metrics.messagesIn.increment();
+        metrics.bytesIn.add(text.length);
+        if (!withinRateLimit()) {
+            return;
+        }
+        // relayed it would grow past what our receivers accept, and a journaled one would be replayed on every reconnect
+        int maxLength = EncodedMessage.maxTextLength(nameBytes);
+        if (text.length > maxLength) {
+            sendMessage("SERVER: Message too long (" + text.length + " bytes), the limit is " + maxLength);
+            return;
+        }
+        if (Protocol.isCommand(text)) {
+            handleCommand(new String(text, StandardCharsets.UTF_8).trim());
+        } else {
+            relay(text);
+        }
+    }
+
+    // false when the message goes no further, DELAY lets it through and pauses our reads instead
+    private boolean withinRateLimit() {
+        long over = rateLimiter.acquire(rateBucket);
+        if (over == 0) {
+            return true;
+        }
+        // only ever written by our reading thread
+        throttledCount++;
+        RateLimitPolicy policy = rateLimiter.getSettings().policy();
+        switch (policy) {
+            case DELAY -> {
+                metrics.throttledDelayed.increment();
+                pauseReads(over);
+                return true;
+            }
+            case DROP -> {
+                metrics.throttledDropped.increment();
+                // one notice a second, a flood of "slow down" would just be another flood
+                long now = System.nanoTime();
+                if (now - lastThrottleNotice >= TimeUnit.SECONDS.toNanos(1)) {
+                    lastThrottleNotice = now;
+                    sendMessage("SERVER: Slow down, messages over the rate limit are dropped");
+                }
+                return false;
+            }
+            default -> {
+                log.warn("Disconnecting " + clientName + " (" + clientAddress + "): over the rate limit");
+                disconnect(DisconnectReason.RATE_LIMITED);
+                return false;
+            }
+        }
+    }
+
+    // the text bytes go out untouched, only prefixed with our name
+    private void relay(byte[] text) {
+        EncodedMessage message = EncodedMessage.chat(nameBytes, text);
+        // rendered on the log writer, nothing is built here when relay logging is off
+        log.debug(message);
+        broadcast(message, false);
+    }
+
+    // answers go straight back to us, room moves are done by the fan-out so they land in order
+    private void handleCommand(String line) {
+        String[] parts = line.split("\\s+", 2);
+        switch (parts[0].toLowerCase(Locale.ROOT)) {
+            case Protocol.JOIN_COMMAND -> {
+                String roomName = RoomRegistry.normalize(parts.length > 1 ? parts[1] : null);
+                if (roomName == null) {
+                    sendMessage("SERVER: Usage: /join <room> (letters, digits, - and _, up to 32)");
+                } else {
+                    server.getFanout().moveTo(this, roomName);
+                }
+            }
+            case Protocol.LEAVE_COMMAND -> server.getFanout().moveTo(this, RoomRegistry.LOBBY);
+            case Protocol.MSG_COMMAND -> directMessage(parts.length > 1 ? parts[1] : "");
+            case Protocol.SEARCH_COMMAND -> {
+                SearchIndex search = server.getSearch();
+                if (search == null) {
+                    sendMessage("SERVER: Search needs the history, the journal is off on this server");
+                } else {
+                    search.search(this, parts.length > 1 ? parts[1] : "");
+                }
+            }
+            case Protocol.ROOMS_COMMAND -> sendMessage("SERVER: Rooms: " + server.getRooms().all().stream()
+                    .sorted(Comparator.comparing(ChatRoom::getName))
+                    .map(r -> "#" + r.getName() + " (" + r.getMemberCount() + ")")
+                    .collect(Collectors.joining(", ")));
+            default -> sendMessage("SERVER: Unknown command " + parts[0] + ", try /join <room>, /leave, /rooms, /msg <name> <text> or /search <words>");
+        }
+    }
+
+    // "<name> <text>" or "#<id> <text>"; names may have spaces, so every word boundary is tried and the longest name wins
+    // each try is one index lookup, and no name is longer than MAX_NAME_LENGTH so neither is the scan, whatever follows
+    // the recipient's queue gets it directly without going near the fan-out
+    private void directMessage(String rest) {
+        SessionIndex sessions = server.getSessions();
+        ClientSession target = null;
+        String text = "";
+        if (rest.startsWith("#")) {
+            String[] idAndText = rest.substring(1).split("\\s+", 2);
+            try {
+                target = sessions.byId(Integer.parseInt(idAndText[0]));
+                text = idAndText.length > 1 ? idAndText[1] : "";
+            } catch (NumberFormatException e) {
+                // no such client then
+            }
+        } else {
+            int space = rest.indexOf(' ');
+            while (true) {
+                int end = space < 0 ? rest.length() : space;
+                if (end > SessionIndex.MAX_NAME_LENGTH) {
+                    break;
+                }
+                ClientSession candidate = sessions.byName(rest.substring(0, end));
+                if (candidate != null) {
+                    target = candidate;
+                    text = rest.substring(end).trim();
+                }
+                if (space < 0) {
+                    break;
+                }
+                space = rest.indexOf(' ', space + 1);
+            }
+        }
+        if (rest.isEmpty() || target != null && text.isEmpty()) {
+            sendMessage("SERVER: Usage: /msg <name or #id> <text>");
+            return;
+        }
+        if (target == null || !target.isConnected()) {
+            sendMessage("SERVER: Nobody called " + rest.split("\\s+", 2)[0] + " is online");
+            return;
+        }
+        target.send(EncodedMessage.direct(nameBytes, text.getBytes(StandardCharsets.UTF_8)));
+        metrics.directMessages.increment();
+        log.debug("Direct message from " + clientName + " to " + target.getClientName());
+    }
+
+    // queues already encoded bytes for our writer, never blocks the caller
+    public void send(EncodedMessage message) {
+        if (!isConnected()) {
+            return;
+        }
+        compress(message);
+        if (!outbound.offer(message)) {
+            log.warn("Disconnecting slow consumer " + clientName + " (" + clientAddress + "): "
+                    + outbound.droppedCount() + " messages dropped");
+            disconnect(DisconnectReason.SLOW_CONSUMER);
+            return;
+        }
+        metrics.messagesOut.increment();
+        metrics.bytesOut.add(message.length());
+        onQueued();
+    }
+
+    // a broadcast is compressed by its first compressing recipient on the fan-out thread, the others reuse those bytes
+    // replayed history comes out of the journal per client, so each of those is compressed for that client alone
+    private void compress(EncodedMessage message) {
+        if (wireFormat == WireFormat.COMPRESSED_FRAME) {
+            int saved = message.compress(server.getCompression());
+            if (saved > 0) {
+                metrics.compressed.increment();
+                metrics.compressionSaved.add(saved);
+            }
+        }
+    }
+
+    // idle reaper, heartbeats skip the metrics and are simply not sent to a full queue
+    public void ping() {
+        sendControl(EncodedMessage.PING);
+    }
+
+    private void sendControl(EncodedMessage message) {
+        if (isConnected() && outbound.offer(message)) {
+            onQueued();
+        }
+    }
+
+    // fan-out thread only, from here on we get the room's broadcasts
+    // returns the token the replay for this move has to present, an older replay still running just stops
+    public long enterRoom(ChatRoom newRoom, boolean replayHistory) {
+        replayLock.lock();
+        try {
+            room = newRoom;
+            replayToken++;
+            if (!replayHistory) {
+                releaseHeld();
+            }
+            replaying = replayHistory;
+            ready = true;
+            return replayToken;
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    // fan-out path, same as send() unless a replay is still running
+    public void deliver(EncodedMessage message) {
+        if (replaying) {
+            replayLock.lock();
+            try {
+                if (replaying) {
+                    // bounded like the real queue, a joiner that can't even take its history loses the oldest live ones
+                    if (heldDuringReplay.size() >= outbound.capacity()) {
+                        heldDuringReplay.poll();
+                        outbound.countDropped();
+                    }
+                    heldDuringReplay.add(message);
+                    return;
+                }
+            } finally {
+                replayLock.unlock();
+            }
+        }
+        send(message);
+    }
+
+    // replay thread, history waits for room in the queue instead of being dropped
+    public boolean replay(EncodedMessage message, long token) throws InterruptedException {
+        compress(message);
+        while (isConnected() && token == replayToken) {
+            if (outbound.offer(message, 100)) {
+                metrics.messagesOut.increment();
+                metrics.bytesOut.add(message.length());
+                onQueued();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void endReplay(long token) {
+        replayLock.lock();
+        try {
+            if (token == replayToken) {
+                releaseHeld();
+                replaying = false;
+            }
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    // replayLock held
+    private void releaseHeld() {
+        EncodedMessage held;
+        while ((held = heldDuringReplay.poll()) != null) {
+            send(held);
+        }
+    }
+
+    // transport specific, stop reading from this client for a while so TCP pushes back on it
+    protected abstract void pauseReads(long nanos);
+
+    // transport specific wake up of the writer, called after every queued message
+    protected abstract void onQueued();
+
+    public void sendMessage(String message) {
+        send(EncodedMessage.ofLine(message));
+    }
+
+    // transport specific socket/channel cleanup
+    protected abstract void closeTransport();
+
+    public void disconnect() {
+        disconnect(DisconnectReason.CLIENT_CLOSED);
+    }
+
+    public void disconnect(DisconnectReason reason) {
+        if (!connected.compareAndSet(true, false)) return;
+
+        clients.remove(this);
+        server.getSessions().unregister(this);
+        listener.decrementClientCount();
+        metrics.disconnected(reason);
+        broadcast(EncodedMessage.leave(clientName), false);
+        server.getFanout().part(this);
+        log.info(clientName + " disconnected (" + reason + ")");
+
+        closeTransport();
+    }
+
+    // encoded once and delivered by the fan-out thread to our room, our read loop moves straight on
+    protected void broadcast(EncodedMessage message, boolean echo) {
+        server.getFanout().publish(this, message, echo);
+    }
+
+    public int getQueueDepth() {
+        return outbound.depth();
+    }
+
+    public int getQueueCapacity() {
+        return outbound.capacity();
+    }
+
+    public long getDroppedCount() {
+        return outbound.droppedCount();
+    }
+
+    // messages that went over a rate limit, whatever the policy did with them
+    public long getThrottledCount() {
+        return throttledCount;
+    }
+
+    // null until admitted, only changed on the fan-out thread
+    public ChatRoom getRoom() {
+        return room;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isHandshakeDone() {
+        return handshakeDone;
+    }
+
+    // only v3 binary clients know what a PING is
+    public boolean answersPings() {
+        return protocolVersion >= Protocol.HEARTBEAT_VERSION;
+    }
+
+    // ROSTER frames are v5
+    public boolean speaksRoster() {
+        return protocolVersion >= Protocol.ROSTER_VERSION;
+    }
+
+    public long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    public boolean isBinary() {
+        return wireFormat.isBinary();
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    public boolean isConnected() {
+        return connected.get();
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public String getClientAddress() {
+        return clientAddress;
+    }
+}
@@ -5,10 +5,14 @@ import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import org.vroomvroom.multichat.chat.ui.ChatMessage;
+import org.vroomvroom.multichat.chat.ui.MessageView;
+import org.vroomvroom.multichat.chat.ui.UiUpdateQueue;
 
-public class ClientTabController {
+import java.util.List;
+import java.util.Map;
+
+public class ClientTabController implements ClientListener {
 
     private BorderPane root;
     @FXML
@@ -22,16 +26,37 @@ public class ClientTabController {
     @FXML
     private TextField messageField;
     @FXML
-    private TextArea chatTextArea;
+    private MessageView chatView;
     @FXML
     private Label statusLabel;
     @FXML
     private CheckBox autoScrollCheck;
+    @FXML
+    private CheckBox virtualThreadCheck;
+    @FXML
+    private CheckBox binaryFramesCheck;
+    @FXML
+    private CheckBox autoReconnectCheck;
+    @FXML
+    private CheckBox compressionCheck;
+    @FXML
+    private ListView<String> rosterView;
+    @FXML
+    private Label rosterLabel;
+    @FXML
+    private TextField linesPerFrameField;
+    @FXML
+    private TextField keepMessagesField;
 
     private ChatClient chatClient;
+    // where the last connection got to, the next one resumes from there instead of replaying history again
+    private long lastSequence = 0;
     private int clientId;
     private String clientName;
-    private SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
+    // chat rows kept on screen, older ones are dropped
+    public static final int DEFAULT_CHAT_RETENTION = 10_000;
+    // chat lines and status updates from the receive thread, applied once per pulse
+    private final UiUpdateQueue<ChatMessage> uiQueue = new UiUpdateQueue<>(this::appendChatLines);
 
 
     // controls the visuals and logic for client tabs
@@ -60,12 +85,23 @@ public class ClientTabController {
         portField = new TextField("8080");
         portField.setPrefWidth(80);
 
+        virtualThreadCheck = new CheckBox("Virtual thread");
+        binaryFramesCheck = new CheckBox("Binary frames");
+        autoReconnectCheck = new CheckBox("Auto-reconnect");
+        // only the binary protocol can carry compressed frames
+        compressionCheck = new CheckBox("Compression");
+        compressionCheck.disableProperty().bind(binaryFramesCheck.selectedProperty().not().or(binaryFramesCheck.disabledProperty()));
+
         statusLabel = new Label("Disconnected");
         statusLabel.setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
 
         topBox.getChildren().addAll(
                 connectButton, disconnectButton,
                 new Label("Port:"), portField,
+                virtualThreadCheck,
+                binaryFramesCheck,
+                autoReconnectCheck,
+                compressionCheck,
                 statusLabel
         );
 
@@ -75,15 +111,24 @@ public class ClientTabController {
         VBox centerBox = new VBox(5);
         centerBox.getChildren().add(new Label("Chat Messages:"));
 
-        chatTextArea = new TextArea();
-        chatTextArea.setEditable(false);
-        chatTextArea.setWrapText(true);
-        chatTextArea.setStyle("-fx-font-family: 'Monospaced';");
-        VBox.setVgrow(chatTextArea, Priority.ALWAYS);
+        // autoScrollCheck is created further down, only looked at when messages arrive
+        chatView = new MessageView(DEFAULT_CHAT_RETENTION, () -> autoScrollCheck.isSelected());
+        VBox.setVgrow(chatView, Priority.ALWAYS);
 
-        centerBox.getChildren().add(chatTextArea);
+        centerBox.getChildren().add(chatView);
         root.setCenter(centerBox);
 
+        // who is online, binary connections to a v5 server only
+        VBox rosterBox = new VBox(5);
+        rosterBox.setPadding(new Insets(0, 0, 0, 10));
+        rosterLabel = new Label("Online:");
+        rosterView = new ListView<>();
+        rosterView.setPrefWidth(160);
+        rosterView.setPlaceholder(new Label("No roster"));
+        VBox.setVgrow(rosterView, Priority.ALWAYS);
+        rosterBox.getChildren().addAll(rosterLabel, rosterView);
+        root.setRight(rosterBox);
+
         // bottom controls
         VBox bottomBox = new VBox(5);
         bottomBox.setPadding(new Insets(10, 0, 0, 0));
@@ -109,9 +154,19 @@ public class ClientTabController {
         clearButton.setPrefWidth(80);
         clearButton.setOnAction(e -> clearChat());
 
+        // view settings, applied on Enter whether connected or not
+        linesPerFrameField = new TextField(String.valueOf(UiUpdateQueue.DEFAULT_MAX_ITEMS_PER_FRAME));
+        linesPerFrameField.setPrefWidth(60);
+        linesPerFrameField.setOnAction(e -> applyLinesPerFrame());
+        keepMessagesField = new TextField(String.valueOf(DEFAULT_CHAT_RETENTION));
+        keepMessagesField.setPrefWidth(60);
+        keepMessagesField.setOnAction(e -> applyRetention());
+
         optionsBox.getChildren().addAll(
                 autoScrollCheck,
                 new Separator(),
+                new Label("Lines/Frame:"), linesPerFrameField,
+                new Label("Keep Messages:"), keepMessagesField,
                 clearButton
         );
 
@@ -148,14 +203,25 @@ public class ClientTabController {
             int port = Integer.parseInt(portField.getText());
 
             // pass clientId to ChatClient
-            chatClient = new ChatClient(port, this, clientId, clientName);
+            ClientOptions options = new ClientOptions(virtualThreadCheck.isSelected(), binaryFramesCheck.isSelected(),
+                    autoReconnectCheck.isSelected(), binaryFramesCheck.isSelected() && compressionCheck.isSelected());
+            if (chatClient != null) {
+                // dropped by the server, not by the disconnect button
+                lastSequence = chatClient.getLastSequence();
+            }
+            chatClient = new ChatClient(port, this, clientId, clientName, options);
+            chatClient.resumeAfter(lastSequence);
+            // the client flips it to Connected (or Reconnecting...) itself
+            updateStatus("Connecting...", "orange");
             chatClient.start();
 
             connectButton.setDisable(true);
             disconnectButton.setDisable(false);
             sendButton.setDisable(false);
             portField.setDisable(true);
-            updateStatus("Connected", "green");
+            virtualThreadCheck.setDisable(true);
+            binaryFramesCheck.setDisable(true);
+            autoReconnectCheck.setDisable(true);
 
             displayMessage("SYSTEM", "Connecting to server at " + ":" + port + "...");
 
@@ -169,6 +235,7 @@ public class ClientTabController {
     public void disconnect() {
         if (chatClient != null) {
             chatClient.disconnect();
+            lastSequence = chatClient.getLastSequence();
             chatClient = null;
         }
 
@@ -176,15 +243,18 @@ public class ClientTabController {
         disconnectButton.setDisable(true);
         sendButton.setDisable(true);
         portField.setDisable(false);
+        virtualThreadCheck.setDisable(false);
+        binaryFramesCheck.setDisable(false);
+        autoReconnectCheck.setDisable(false);
+        // ChatClient.disconnect() already said so in the chat
         updateStatus("Disconnected", "red");
-
-        displayMessage("SYSTEM", "Disconnected from server");
     }
 
     // didnt like the general display so I changed some things but refactoring was a pain in the ass, I mean no offense, but this is a once in a week class, dude...
     public void sendMessage() {
         String message = messageField.getText().trim();
-        if (!message.isEmpty() && chatClient != null && chatClient.isConnected()) {
+        // while reconnecting the client holds on to it until the connection is back
+        if (!message.isEmpty() && chatClient != null && (chatClient.isConnected() || chatClient.isReconnecting())) {
             chatClient.sendMessage(message);
             displayMessage("You", message);
             messageField.clear();
@@ -192,26 +262,69 @@ public class ClientTabController {
     }
 
     public void clearChat() {
-        chatTextArea.clear();
+        chatView.clear();
     }
 
+    // safe from any thread
+    @Override
     public void displayMessage(String sender, String message) {
-        Platform.runLater(() -> {
-            String timestamp = dateFormat.format(new Date());
-            chatTextArea.appendText("[" + timestamp + "] " + message + "\n");
-            if (autoScrollCheck.isSelected()) {
-                chatTextArea.setScrollTop(Double.MAX_VALUE);
-            }
-        });
+        uiQueue.add(ChatMessage.now(sender, message));
+    }
+
+    // one list change (and one scroll) per pulse instead of one per line
+    private void appendChatLines(List<ChatMessage> messages) {
+        chatView.append(messages);
+    }
+
+    public void setChatRetention(int retention) {
+        // fail here rather than on the fx thread
+        if (retention < 1) {
+            throw new IllegalArgumentException("Retention must be at least 1");
+        }
+        Platform.runLater(() -> chatView.setRetention(retention));
+    }
+
+    private void applyRetention() {
+        try {
+            setChatRetention(Integer.parseInt(keepMessagesField.getText().trim()));
+        } catch (IllegalArgumentException e) {
+            keepMessagesField.setText(String.valueOf(chatView.getRetention()));
+            showAlert("Invalid Input", "Messages kept must be a number, at least 1");
+        }
+    }
+
+    public void setMaxChatLinesPerFrame(int maxLines) {
+        uiQueue.setMaxItemsPerFrame(maxLines);
+    }
+
+    private void applyLinesPerFrame() {
+        try {
+            setMaxChatLinesPerFrame(Integer.parseInt(linesPerFrameField.getText().trim()));
+        } catch (IllegalArgumentException e) {
+            linesPerFrameField.setText(String.valueOf(uiQueue.getMaxItemsPerFrame()));
+            showAlert("Invalid Input", "Lines per frame must be a number, at least 1");
+        }
     }
 
+    @Override
     public void updateStatus(String status, String color) {
-        Platform.runLater(() -> {
+        uiQueue.postLatest(statusLabel, () -> {
             statusLabel.setText(status);
             statusLabel.setStyle("-fx-text-fill: " + color + "; -fx-font-weight: bold;");
         });
     }
 
+    // a burst of deltas within one pulse ends up as a single list refresh
+    @Override
+    public void rosterChanged(Map<String, String> roster) {
+        uiQueue.postLatest(rosterView, () -> {
+            rosterView.getItems().setAll(roster.entrySet().stream()
+                    .map(entry -> entry.getKey() + "  #" + entry.getValue())
+                    .toList());
+            rosterLabel.setText(roster.isEmpty() ? "Online:" : "Online (" + roster.size() + "):");
+        });
+    }
+
     private void showAlert(String title, String message) {
         Platform.runLater(() -> {
             Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -226,6 +339,7 @@ public class ClientTabController {
         return messageField;
     }
 
+    @Override
     public void handleServerMessage(String message) {
         displayMessage("SERVER", message);
     }
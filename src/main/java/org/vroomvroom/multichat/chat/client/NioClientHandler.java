@@ -0,0 +1,254 @@
+package org.vroomvroom.multichat.chat.client;
+
+import org.vroomvroom.multichat.chat.protocol.FrameDecoder;
+import org.vroomvroom.multichat.chat.server.ChatServer;
+import org.vroomvroom.multichat.chat.server.DisconnectReason;
+import org.vroomvroom.multichat.chat.server.EncodedMessage;
+import org.vroomvroom.multichat.chat.server.NioEventLoop;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// non-blocking transport, lives on one NioEventLoop and speaks the same line protocol as ClientHandler
+public class NioClientHandler extends ClientSession {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private byte[] lineBytes = new byte[256];
+    private int lineLength = 0;
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+
+    // outbound is filled from any thread, drained only on the loop thread
+    // pending holds what the last gathering write didn't finish, from pendingStart on
+    private static final int MAX_GATHER = 64;
+    private final ByteBuffer[] pending = new ByteBuffer[MAX_GATHER];
+    private int pendingStart = 0;
+    private int pendingCount = 0;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private SelectionKey key;
+    // loop thread only, 0 while reading normally
+    private long readsPausedUntil = 0;
+
+    public NioClientHandler(SocketChannel channel, NioEventLoop loop, ChatServer server) throws IOException {
+        super(addressOf(channel), server);
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    private static String addressOf(SocketChannel channel) throws IOException {
+        InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+        return remote.getAddress().getHostAddress() + ":" + remote.getPort();
+    }
+
+    // loop thread only
+    public void register(Selector selector) throws IOException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+        log.debug("Waiting for client ID from: " + clientAddress);
+    }
+
+    // loop thread only
+    public void onReadable() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            disconnect(DisconnectReason.CLIENT_CLOSED);
+            return;
+        }
+
+        readBuffer.flip();
+        drainReadBuffer();
+    }
+
+    // stops early when a rate limit paused us, resumeReads picks up the rest
+    private void drainReadBuffer() throws IOException {
+        while (readBuffer.hasRemaining() && isConnected() && readsPausedUntil == 0) {
+            // the handshake line can be followed by frames in the same read
+            if (isBinary()) {
+                frameDecoder.decode(readBuffer, this::handleFrame, () -> readsPausedUntil != 0);
+                break;
+            }
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                handleLine(takeLine());
+            } else {
+                appendByte(b);
+            }
+        }
+        // keeps what a pause left unread, the next read appends behind it
+        readBuffer.compact();
+    }
+
+    private void appendByte(byte b) throws IOException {
+        if (lineLength == lineBytes.length) {
+            if (lineLength >= MAX_LINE_LENGTH) {
+                throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes");
+            }
+            lineBytes = Arrays.copyOf(lineBytes, Math.min(lineLength * 2, MAX_LINE_LENGTH));
+        }
+        lineBytes[lineLength++] = b;
+    }
+
+    // same line endings BufferedReader.readLine accepts
+    private String takeLine() {
+        int length = lineLength;
+        if (length > 0 && lineBytes[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+        return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // loop thread only, the rest of the read buffer waits along with the socket
+    @Override
+    protected void pauseReads(long nanos) {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        long until = System.nanoTime() + nanos;
+        if (readsPausedUntil == 0) {
+            try {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            } catch (CancelledKeyException e) {
+                // closed from another thread, nothing left to pause
+                return;
+            }
+            loop.schedule(nanos, this::resumeReads);
+        }
+        readsPausedUntil = Math.max(readsPausedUntil, until);
+    }
+
+    private void resumeReads() {
+        long remaining = readsPausedUntil - System.nanoTime();
+        if (remaining > 0) {
+            loop.schedule(remaining, this::resumeReads);
+            return;
+        }
+        readsPausedUntil = 0;
+        try {
+            readBuffer.flip();
+            drainReadBuffer();
+            if (readsPausedUntil == 0 && key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        } catch (CancelledKeyException e) {
+            // closed from another thread in the meantime
+        } catch (IOException e) {
+            onError(e);
+        } catch (RuntimeException e) {
+            onFailure(e);
+        }
+    }
+
+    // loop thread only
+    public void onWritable() throws IOException {
+        flush();
+    }
+
+    public void onError(IOException e) {
+        if (isConnected()) {
+            log.warn("Error with client #" + clientId + ": " + e.getMessage());
+        }
+        disconnect(DisconnectReason.IO_ERROR);
+    }
+
+    // a bug in handling this one client costs that client its connection, never the loop the others share
+    public void onFailure(RuntimeException e) {
+        log.error("Unexpected error with client #" + clientId + ", disconnecting: " + e);
+        disconnect(DisconnectReason.IO_ERROR);
+    }
+
+    // one flush per loop pass however many messages got queued meanwhile, later still with a flush delay
+    @Override
+    protected void onQueued() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            long delay = outbound.flushDelayMillis();
+            if (delay == 0) {
+                loop.execute(this::flushFromLoop);
+            } else {
+                loop.execute(() -> loop.schedule(TimeUnit.MILLISECONDS.toNanos(delay), this::flushFromLoop));
+            }
+        }
+    }
+
+    private void flushFromLoop() {
+        flushScheduled.set(false);
+        try {
+            flush();
+        } catch (IOException e) {
+            onError(e);
+        } catch (RuntimeException e) {
+            onFailure(e);
+        }
+    }
+
+    // gathering writes of up to MAX_GATHER queued messages, parks the rest behind OP_WRITE
+    private void flush() throws IOException {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        try {
+            writePending();
+        } catch (CancelledKeyException e) {
+            // closed from another thread while we were at it, nothing left to write to
+        }
+    }
+
+    private void writePending() throws IOException {
+        while (true) {
+            fillPending();
+            if (pendingCount == 0) {
+                break;
+            }
+            channel.write(pending, pendingStart, pendingCount);
+            metrics.socketWrites.increment();
+            while (pendingCount > 0 && !pending[pendingStart].hasRemaining()) {
+                pending[pendingStart++] = null;
+                pendingCount--;
+            }
+            if (pendingCount > 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    // tops the gather array up from the queue, unfinished buffers move to the front first
+    private void fillPending() {
+        if (pendingStart > 0) {
+            System.arraycopy(pending, pendingStart, pending, 0, pendingCount);
+            Arrays.fill(pending, pendingCount, pendingStart + pendingCount, null);
+            pendingStart = 0;
+        }
+        while (pendingCount < MAX_GATHER) {
+            EncodedMessage message = outbound.poll();
+            if (message == null) {
+                return;
+            }
+            // every recipient gets its own position over the shared bytes
+            pending[pendingCount++] = message.buffer(wireFormat);
+        }
+    }
+
+    @Override
+    protected void closeTransport() {
+        outbound.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error closing channel for client #" + clientId + ": " + e.getMessage());
+        }
+    }
+}
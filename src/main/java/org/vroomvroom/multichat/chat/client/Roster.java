@@ -0,0 +1,36 @@
+package org.vroomvroom.multichat.chat.client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// the client's copy of who is online (name -> room), built from ROSTER frames
+// a snapshot replaces everything, a delta only touches the names it lists; receive thread only
+class Roster {
+
+    private final TreeMap<String, String> online = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    // kind is the frame's subject, body its "+<room>\t<name>" / "-\t<name>" lines
+    void apply(String kind, String body) {
+        if (kind.equals("snapshot")) {
+            online.clear();
+        }
+        for (String line : body.split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab < 1) {
+                continue;
+            }
+            String name = line.substring(tab + 1);
+            if (line.charAt(0) == '+') {
+                online.put(name, line.substring(1, tab));
+            } else {
+                online.remove(name);
+            }
+        }
+    }
+
+    // a copy, the listener may hold on to it
+    Map<String, String> entries() {
+        return Collections.unmodifiableMap(new TreeMap<>(online));
+    }
+}
@@ -0,0 +1,82 @@
+package org.vroomvroom.multichat.chat.client;
+
+import java.util.Arrays;
+
+// which server sequences a client already showed, so replayed copies after a reconnect are dropped
+// a sliding bitmap over the last WINDOW sequences behind the highest one seen; older history (joining a room
+// replays messages from before we were there) is still accepted because it was never seen
+// receive thread only
+class SequenceTracker {
+
+    private static final int WINDOW = 1 << 16;
+
+    private final long[] seen = new long[WINDOW / 64];
+    private long highest = 0;
+    private long duplicates = 0;
+
+    // false for a sequence we already had, 0 (not sequenced) is always new
+    boolean accept(long sequence) {
+        if (sequence <= 0) {
+            return true;
+        }
+        if (sequence > highest) {
+            if (sequence - highest >= WINDOW) {
+                Arrays.fill(seen, 0);
+            } else {
+                for (long s = highest + 1; s < sequence; s++) {
+                    clear(s);
+                }
+            }
+            highest = sequence;
+            set(sequence);
+            return true;
+        }
+        if (highest - sequence >= WINDOW) {
+            // too old to tell, history is the likelier case
+            return true;
+        }
+        if (isSet(sequence)) {
+            duplicates++;
+            return false;
+        }
+        set(sequence);
+        return true;
+    }
+
+    // carried over from an earlier connection, only the number survives so older copies are not recognized
+    void seed(long sequence) {
+        if (sequence > highest) {
+            reset();
+            highest = sequence;
+        }
+    }
+
+    // the server numbers from scratch again (restarted without its journal)
+    void reset() {
+        Arrays.fill(seen, 0);
+        highest = 0;
+    }
+
+    long highest() {
+        return highest;
+    }
+
+    long duplicates() {
+        return duplicates;
+    }
+
+    private void set(long sequence) {
+        int bit = (int) (sequence & (WINDOW - 1));
+        seen[bit >>> 6] |= 1L << bit;
+    }
+
+    private void clear(long sequence) {
+        int bit = (int) (sequence & (WINDOW - 1));
+        seen[bit >>> 6] &= ~(1L << bit);
+    }
+
+    private boolean isSet(long sequence) {
+        int bit = (int) (sequence & (WINDOW - 1));
+        return (seen[bit >>> 6] & (1L << bit)) != 0;
+    }
+}
@@ -0,0 +1,114 @@
+package org.vroomvroom.multichat.chat.client;
+
+import org.vroomvroom.multichat.chat.protocol.Frame;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// small replacement for BufferedReader.readLine on a socket stream, that can also read binary frames
+// lines and frames share one buffer, so whatever arrived right behind the handshake line is not lost
+// keeps per-connection memory tiny (no 8k char + 8k byte buffers) and has no monitors,
+// so a virtual thread parked in read() never pins its carrier
+class WireReader {
+
+    private static final int BUFFER_SIZE = 512;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private byte[] lineBytes = new byte[128];
+    private int lineLength = 0;
+
+    WireReader(InputStream in) {
+        this.in = in;
+    }
+
+    // null on end of stream, like BufferedReader
+    String readLine() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                if (lineLength == 0) {
+                    return null;
+                }
+                return takeLine();
+            }
+
+            while (position < limit) {
+                byte b = buffer[position++];
+                if (b == '\n') {
+                    return takeLine();
+                }
+                appendByte(b);
+            }
+        }
+    }
+
+    // null on a clean end of stream between frames
+    // with a socket timeout set, SocketTimeoutException means nothing arrived and the next call simply tries again
+    Frame readFrame() throws IOException {
+        if (position == limit && !fill()) {
+            return null;
+        }
+        byte[] header = new byte[Frame.HEADER_LENGTH];
+        readFully(header);
+        int length = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16)
+                | ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+        Frame.checkLength(length);
+
+        byte[] data = new byte[length];
+        readFully(data);
+        return Frame.decode(data, 0, length);
+    }
+
+    private void readFully(byte[] target) throws IOException {
+        int filled = 0;
+        while (filled < target.length) {
+            boolean more;
+            try {
+                more = position < limit || fill();
+            } catch (SocketTimeoutException e) {
+                // only a timeout between frames can be retried, the part read so far is gone
+                throw new IOException("Read timed out mid frame", e);
+            }
+            if (!more) {
+                throw new EOFException("Connection closed mid frame");
+            }
+            int chunk = Math.min(limit - position, target.length - filled);
+            System.arraycopy(buffer, position, target, filled, chunk);
+            position += chunk;
+            filled += chunk;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    private void appendByte(byte b) throws IOException {
+        if (lineLength == lineBytes.length) {
+            if (lineLength >= MAX_LINE_LENGTH) {
+                throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes");
+            }
+            lineBytes = Arrays.copyOf(lineBytes, Math.min(lineLength * 2, MAX_LINE_LENGTH));
+        }
+        lineBytes[lineLength++] = b;
+    }
+
+    private String takeLine() {
+        int length = lineLength;
+        if (length > 0 && lineBytes[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+        return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
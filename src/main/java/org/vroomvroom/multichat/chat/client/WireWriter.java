@@ -0,0 +1,93 @@
+package org.vroomvroom.multichat.chat.client;
+
+import org.vroomvroom.multichat.chat.protocol.Frame;
+import org.vroomvroom.multichat.chat.protocol.WireFormat;
+import org.vroomvroom.multichat.chat.server.EncodedMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// PrintWriter(autoflush) without the synchronized blocks and without swallowing errors
+// one write per line or frame straight to the socket, serialized with a ReentrantLock so virtual threads can park on it
+// the server's writers hand over whole batches instead, copied into one buffer and written with a single call
+class WireWriter {
+
+    // a batch bigger than this goes out in more than one write
+    static final int BATCH_BYTES = 64 * 1024;
+
+    private final OutputStream out;
+    private final ReentrantLock lock = new ReentrantLock();
+    // allocated on the first batch, clients never need it
+    private byte[] batchBuffer;
+
+    WireWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    void println(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            out.write(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void writeFrame(Frame frame) throws IOException {
+        byte[] bytes = frame.encode();
+        lock.lock();
+        try {
+            out.write(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // already encoded messages, shared between recipients so they are copied as is
+    // returns the number of writes it took, 1 unless the batch was over BATCH_BYTES
+    int writeBatch(List<EncodedMessage> messages, WireFormat format) throws IOException {
+        lock.lock();
+        try {
+            if (batchBuffer == null) {
+                batchBuffer = new byte[BATCH_BYTES];
+            }
+            int writes = 0;
+            int filled = 0;
+            for (EncodedMessage message : messages) {
+                int length = message.wireLength(format);
+                if (filled + length > BATCH_BYTES && filled > 0) {
+                    out.write(batchBuffer, 0, filled);
+                    writes++;
+                    filled = 0;
+                }
+                if (length > BATCH_BYTES) {
+                    // no point copying something this big
+                    message.writeTo(out, format);
+                    writes++;
+                } else {
+                    message.copyTo(batchBuffer, filled, format);
+                    filled += length;
+                }
+            }
+            if (filled > 0) {
+                out.write(batchBuffer, 0, filled);
+                writes++;
+            }
+            return writes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // socket is going away anyway
+        }
+    }
+}
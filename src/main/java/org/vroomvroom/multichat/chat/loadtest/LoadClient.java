@@ -0,0 +1,99 @@
+package org.vroomvroom.multichat.chat.loadtest;
+
+import org.vroomvroom.multichat.chat.client.ChatClient;
+import org.vroomvroom.multichat.chat.client.ClientListener;
+import org.vroomvroom.multichat.chat.client.ClientOptions;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+// one simulated user: a real ChatClient plus a virtual thread sending at a fixed rate
+// every message carries its scheduled send time, receivers turn that into fan-out latency
+class LoadClient implements ClientListener {
+
+    static final String MARKER = "LG ";
+
+    private final int index;
+    private final LoadStats stats;
+    private final ChatClient client;
+    private final String padding;
+    private Thread sender;
+
+    LoadClient(int index, LoadSettings settings, LoadStats stats) {
+        this.index = index;
+        this.stats = stats;
+        // virtual receive threads, thousands of platform threads would measure the OS instead of the server
+        this.client = new ChatClient(settings.host(), settings.port(), this, index, "load" + index,
+                new ClientOptions(true, settings.binary(), false, settings.binary() && settings.compress()));
+        // "LG <nanos> <index> " is ~25 bytes, the rest is filler up to the requested size
+        this.padding = "x".repeat(Math.max(0, settings.size() - 25));
+    }
+
+    boolean connect() {
+        client.start();
+        return client.isConnected();
+    }
+
+    void send(String text) {
+        client.sendMessage(text);
+    }
+
+    void startSending(double rate) {
+        long period = (long) (1_000_000_000L / rate);
+        sender = Thread.ofVirtual().name("load-" + index + "-send").start(() -> {
+            // spread the clients over the period so they don't all fire at once
+            long next = stats.clock() + ThreadLocalRandom.current().nextLong(period);
+            while (client.isConnected() && !Thread.currentThread().isInterrupted()) {
+                long wait = next - stats.clock();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                // scheduled time, not "now": a sender that fell behind still gets charged for the wait
+                client.sendMessage(MARKER + next + " " + index + " " + padding);
+                stats.sent();
+                next += period;
+            }
+        });
+    }
+
+    void stopSending() {
+        if (sender != null) {
+            sender.interrupt();
+        }
+    }
+
+    void disconnect() {
+        client.disconnect();
+    }
+
+    @Override
+    public void handleServerMessage(String message) {
+        int at = message.indexOf(MARKER);
+        if (at < 0) {
+            return;
+        }
+        long now = stats.clock();
+        long sentAt = 0;
+        for (int i = at + MARKER.length(); i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            sentAt = sentAt * 10 + (c - '0');
+        }
+        stats.received(now - sentAt);
+    }
+
+    @Override
+    public void displayMessage(String sender, String message) {
+        if (message.startsWith("Connection lost") || message.startsWith("Send failed")) {
+            stats.error();
+        }
+    }
+
+    @Override
+    public void updateStatus(String status, String color) {
+        // nobody looks at it
+    }
+}
@@ -0,0 +1,285 @@
+package org.vroomvroom.multichat.chat.loadtest;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.metrics.LatencyHistogram;
+import org.vroomvroom.multichat.chat.server.ChatServer;
+import org.vroomvroom.multichat.chat.server.JournalSettings;
+import org.vroomvroom.multichat.chat.server.LogSettings;
+import org.vroomvroom.multichat.chat.server.RateLimitSettings;
+import org.vroomvroom.multichat.chat.server.ServerConfig;
+import org.vroomvroom.multichat.chat.server.ServerListener;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+// headless load test: thousands of ChatClients against a server, fan-out latency and throughput as JSON
+//   LoadGenerator --clients=1000 --rate=2 --size=128 --duration=30 --embedded=nio
+// without --embedded it goes against --host/--port, which then has to admit that many clients
+// heap/thread numbers are for this JVM, so they include the server only with --embedded
+public class LoadGenerator {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // binding is quick, this only has to cover a busy machine
+    private static final long EMBEDDED_START_TIMEOUT_MS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        LoadSettings settings;
+        try {
+            settings = LoadSettings.fromProperties(parseArgs(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid settings: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+            return;
+        }
+        new LoadGenerator().run(settings);
+        // virtual send/receive threads are daemon, but the embedded server pools may not be
+        System.exit(0);
+    }
+
+    private void run(LoadSettings settings) throws InterruptedException, IOException {
+        ChatServer server = null;
+        if (settings.embedded() != null) {
+            server = startEmbedded(settings);
+        }
+
+        LoadStats stats = new LoadStats();
+        List<LoadClient> clients = new ArrayList<>(settings.clients());
+        int failed = 0;
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < settings.clients(); i++) {
+            LoadClient client = new LoadClient(i + 1, settings, stats);
+            if (client.connect()) {
+                clients.add(client);
+                if (settings.rooms() > 1) {
+                    client.send("/join load-" + (i % settings.rooms()));
+                }
+            } else {
+                failed++;
+            }
+        }
+        double connectSeconds = (System.nanoTime() - connectStart) / 1e9;
+        System.out.printf(Locale.ROOT, "Connected %d clients (%d failed) in %.2fs%n", clients.size(), failed, connectSeconds);
+
+        JvmSampler sampler = new JvmSampler();
+        sampler.start();
+
+        for (LoadClient client : clients) {
+            client.startSending(settings.rate());
+        }
+        Thread.sleep(settings.warmupSeconds() * 1000L);
+
+        stats.setMeasuring(true);
+        long measureStart = System.nanoTime();
+        Thread.sleep(settings.durationSeconds() * 1000L);
+        stats.setMeasuring(false);
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+        for (LoadClient client : clients) {
+            client.stopSending();
+        }
+        sampler.stop();
+
+        long serverDropped = 0;
+        if (server != null) {
+            for (ClientSession session : server.getClients()) {
+                serverDropped += session.getDroppedCount();
+            }
+        }
+
+        String json = toJson(settings, stats, sampler, clients.size(), failed, connectSeconds, seconds, server != null, serverDropped);
+        Path out = settings.out() != null ? settings.out()
+                : Path.of("loadtest-results", "loadtest-" + LocalDateTime.now().format(FILE_TIME) + ".json");
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.writeString(out, json);
+
+        LatencyHistogram latency = stats.getLatency();
+        System.out.printf(Locale.ROOT, "Sent %d (%.0f/s), received %d (%.0f/s), errors %d%n",
+                stats.getSent(), stats.getSent() / seconds, stats.getReceived(), stats.getReceived() / seconds, stats.getErrors());
+        System.out.printf(Locale.ROOT, "Latency ms p50 %.3f  p99 %.3f  p999 %.3f  max %.3f%n",
+                millis(latency.percentile(0.5)), millis(latency.percentile(0.99)),
+                millis(latency.percentile(0.999)), millis(latency.getMax()));
+        System.out.println("Results written to " + out.toAbsolutePath());
+
+        for (LoadClient client : clients) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    private ChatServer startEmbedded(LoadSettings settings) throws InterruptedException, IOException {
+        // log off entirely, the listener only has to take the client counts
+        ServerListener quiet = new ServerListener() {
+            @Override
+            public void logMessage(String message) {
+            }
+
+            @Override
+            public void incrementClientCount() {
+            }
+
+            @Override
+            public void decrementClientCount() {
+            }
+        };
+        // the whole point is to flood it, so no rate limits
+        ServerConfig config = ServerConfig.DEFAULT
+                .withPort(settings.port())
+                .withMaxClients(settings.clients() + 16)
+                .withTransportMode(settings.embedded())
+                .withJournal(JournalSettings.DISABLED)
+                .withLog(LogSettings.OFF)
+                .withRateLimit(RateLimitSettings.OFF);
+        ChatServer server = new ChatServer(config, quiet);
+        Thread serverThread = new Thread(server, "embedded-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        if (!server.awaitListening(EMBEDDED_START_TIMEOUT_MS)) {
+            server.stopServer();
+            throw new IOException("Embedded server not listening on port " + settings.port()
+                    + " after " + EMBEDDED_START_TIMEOUT_MS + "ms");
+        }
+        return server;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String toJson(LoadSettings s, LoadStats stats, JvmSampler sampler, int connected, int failed,
+                                 double connectSeconds, double seconds, boolean embedded, long serverDropped) {
+        LatencyHistogram latency = stats.getLatency();
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n");
+        json.append("  \"timestamp\": \"").append(LocalDateTime.now()).append("\",\n");
+        json.append("  \"settings\": {")
+                .append("\"host\": \"").append(s.host()).append("\", ")
+                .append("\"port\": ").append(s.port()).append(", ")
+                .append("\"clients\": ").append(s.clients()).append(", ")
+                .append("\"rate\": ").append(fmt(s.rate())).append(", ")
+                .append("\"size\": ").append(s.size()).append(", ")
+                .append("\"rooms\": ").append(s.rooms()).append(", ")
+                .append("\"warmupSeconds\": ").append(s.warmupSeconds()).append(", ")
+                .append("\"durationSeconds\": ").append(s.durationSeconds()).append(", ")
+                .append("\"binary\": ").append(s.binary()).append(", ")
+                .append("\"compress\": ").append(s.compress()).append(", ")
+                .append("\"embedded\": ").append(embedded ? "\"" + s.embedded().name() + "\"" : "null")
+                .append("},\n");
+        json.append("  \"connected\": ").append(connected).append(",\n");
+        json.append("  \"connectFailures\": ").append(failed).append(",\n");
+        json.append("  \"connectSeconds\": ").append(fmt(connectSeconds)).append(",\n");
+        json.append("  \"measuredSeconds\": ").append(fmt(seconds)).append(",\n");
+        json.append("  \"sent\": ").append(stats.getSent()).append(",\n");
+        json.append("  \"received\": ").append(stats.getReceived()).append(",\n");
+        json.append("  \"sentPerSecond\": ").append(fmt(stats.getSent() / seconds)).append(",\n");
+        json.append("  \"receivedPerSecond\": ").append(fmt(stats.getReceived() / seconds)).append(",\n");
+        json.append("  \"errors\": ").append(stats.getErrors()).append(",\n");
+        json.append("  \"latencyMs\": {")
+                .append("\"p50\": ").append(fmt(millis(latency.percentile(0.5)))).append(", ")
+                .append("\"p90\": ").append(fmt(millis(latency.percentile(0.9)))).append(", ")
+                .append("\"p99\": ").append(fmt(millis(latency.percentile(0.99)))).append(", ")
+                .append("\"p999\": ").append(fmt(millis(latency.percentile(0.999)))).append(", ")
+                .append("\"max\": ").append(fmt(millis(latency.getMax()))).append(", ")
+                .append("\"mean\": ").append(fmt(millis((long) latency.getMean())))
+                .append("},\n");
+        json.append("  \"jvm\": {")
+                .append("\"heapUsedPeakMb\": ").append(fmt(sampler.heapPeak.get() / 1048576.0)).append(", ")
+                .append("\"heapUsedEndMb\": ").append(fmt(sampler.heapEnd / 1048576.0)).append(", ")
+                .append("\"platformThreadsPeak\": ").append(sampler.threadsPeak.get()).append(", ")
+                .append("\"includesServer\": ").append(embedded)
+                .append("}");
+        if (embedded) {
+            json.append(",\n  \"server\": {\"droppedMessages\": ").append(serverDropped).append("}");
+        }
+        json.append("\n}\n");
+        return json.toString();
+    }
+
+    private static String fmt(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    // heap and platform thread count once a second (virtual threads don't show up in the thread count)
+    private static class JvmSampler {
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final AtomicLong heapPeak = new AtomicLong();
+        private final AtomicLong threadsPeak = new AtomicLong();
+        private volatile long heapEnd;
+        private Thread thread;
+
+        void start() {
+            thread = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        sample();
+                        Thread.sleep(1000);
+                    }
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }, "load-jvm-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void sample() {
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            heapPeak.accumulateAndGet(heap, Math::max);
+            threadsPeak.accumulateAndGet(threads.getThreadCount(), Math::max);
+            heapEnd = heap;
+        }
+
+        void stop() {
+            thread.interrupt();
+            sample();
+        }
+    }
+
+    static Properties parseArgs(String[] args) {
+        Properties properties = new Properties();
+        for (String arg : args) {
+            if (arg.equals("--help") || arg.equals("-h")) {
+                printUsage();
+                System.exit(0);
+            }
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            properties.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return properties;
+    }
+
+    private static void printUsage() {
+        System.err.println("""
+                Usage: LoadGenerator [--key=value ...]
+                  --host=localhost --port=8080   server to load (ignored host with --embedded)
+                  --embedded=nio                 start a server in this JVM: blocking, virtual or nio
+                  --clients=100                  simulated clients
+                  --rate=1                       messages per second per client
+                  --size=64                      message size in bytes
+                  --rooms=1                      spread clients over this many rooms
+                  --warmup=5 --duration=30       seconds
+                  --binary=false                 binary frames instead of text lines
+                  --compress=false               ask for compressed frames (binary only)
+                  --out=<file.json>              default loadtest-results/loadtest-<time>.json""");
+    }
+}
@@ -0,0 +1,38 @@
+package org.vroomvroom.multichat.chat.loadtest;
+
+import org.vroomvroom.multichat.chat.server.TransportMode;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+// one load run, see LoadGenerator for the flags
+// embedded == null means an already running server at host:port
+public record LoadSettings(String host, int port, int clients, double rate, int size, int rooms,
+                           int warmupSeconds, int durationSeconds, boolean binary,
+                           boolean compress, TransportMode embedded, Path out) {
+
+    public LoadSettings {
+        if (clients < 1 || rate <= 0 || size < 1 || rooms < 1 || warmupSeconds < 0 || durationSeconds < 1) {
+            throw new IllegalArgumentException("clients, rate, size, rooms and duration must be positive");
+        }
+    }
+
+    public static LoadSettings fromProperties(Properties p) {
+        String embedded = p.getProperty("embedded");
+        return new LoadSettings(
+                p.getProperty("host", "localhost"),
+                Integer.parseInt(p.getProperty("port", "8080")),
+                Integer.parseInt(p.getProperty("clients", "100")),
+                Double.parseDouble(p.getProperty("rate", "1")),
+                Integer.parseInt(p.getProperty("size", "64")),
+                Integer.parseInt(p.getProperty("rooms", "1")),
+                Integer.parseInt(p.getProperty("warmup", "5")),
+                Integer.parseInt(p.getProperty("duration", "30")),
+                Boolean.parseBoolean(p.getProperty("binary", "false")),
+                Boolean.parseBoolean(p.getProperty("compress", "false")),
+                embedded == null ? null : TransportMode.valueOf(embedded.trim().toUpperCase(Locale.ROOT)),
+                p.getProperty("out") == null ? null : Path.of(p.getProperty("out"))
+        );
+    }
+}
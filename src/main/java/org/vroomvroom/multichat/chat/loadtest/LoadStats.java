@@ -0,0 +1,58 @@
+package org.vroomvroom.multichat.chat.loadtest;
+
+import org.vroomvroom.multichat.chat.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// shared by every simulated client, only counts while measuring (after the warmup)
+class LoadStats {
+
+    private final long start = System.nanoTime();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile boolean measuring = false;
+
+    // nanos since the run started, never negative so it survives the trip through the message text
+    long clock() {
+        return System.nanoTime() - start;
+    }
+
+    void sent() {
+        if (measuring) {
+            sent.increment();
+        }
+    }
+
+    void received(long latencyNanos) {
+        if (measuring) {
+            received.increment();
+            latency.record(latencyNanos);
+        }
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    void setMeasuring(boolean measuring) {
+        this.measuring = measuring;
+    }
+
+    long getSent() {
+        return sent.sum();
+    }
+
+    long getReceived() {
+        return received.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,206 @@
+package org.vroomvroom.multichat.chat.log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// logging off the I/O threads
+// producers claim a slot of a preallocated ring with one CAS and fill it in, a single writer thread renders
+// and hands the lines to the sinks in batches; nothing is allocated per event on the caller's side
+// a full ring drops the event instead of blocking the caller, the writer reports how many it lost
+public class AsyncLog {
+
+    private static final int MAX_BATCH = 1024;
+    // the writer parks at most this long, a missed wake up costs a little latency and nothing else
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long CLOSE_WAIT_MS = 2_000;
+
+    private final LogEvent[] ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // writer thread only
+    private long head = 0;
+    private final List<LogSink> sinks;
+    private volatile LogLevel level;
+    private final LongAdder dropped = new LongAdder();
+    private long droppedReported = 0;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private volatile boolean writerParked = false;
+    private Thread writerThread;
+
+    public AsyncLog(int capacity, LogLevel level, List<LogSink> sinks) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Log buffer capacity must be a power of two");
+        }
+        this.ring = new LogEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new LogEvent(i);
+        }
+        this.mask = capacity - 1;
+        this.level = level;
+        this.sinks = List.copyOf(sinks);
+    }
+
+    public void start() {
+        if (!isRunning.compareAndSet(false, true)) {
+            return;
+        }
+        writerThread = new Thread(this::writeLoop, "log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // cheap enough for the hot path, check it before building anything expensive
+    public boolean isEnabled(LogLevel candidate) {
+        return level.includes(candidate) && !sinks.isEmpty();
+    }
+
+    public void setLevel(LogLevel level) {
+        this.level = level;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    public void debug(Object message) {
+        log(LogLevel.DEBUG, message);
+    }
+
+    public void info(Object message) {
+        log(LogLevel.INFO, message);
+    }
+
+    public void warn(Object message) {
+        log(LogLevel.WARN, message);
+    }
+
+    public void error(Object message) {
+        log(LogLevel.ERROR, message);
+    }
+
+    // any thread, never blocks
+    public void log(LogLevel eventLevel, Object message) {
+        if (!isEnabled(eventLevel)) {
+            return;
+        }
+        long position;
+        LogEvent event;
+        while (true) {
+            position = tail.get();
+            event = ring[(int) (position & mask)];
+            long sequence = event.sequence;
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // the writer hasn't freed this slot yet, we're a whole ring ahead of it
+                dropped.increment();
+                return;
+            }
+            // else another producer took this position, try the next one
+        }
+        event.timestamp = System.currentTimeMillis();
+        event.level = eventLevel;
+        event.message = message;
+        event.sequence = position + 1;
+
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void writeLoop() {
+        while (isRunning.get()) {
+            if (drain() == 0) {
+                writerParked = true;
+                // re-check after announcing, a producer that published before it saw the flag won't unpark us
+                if (!hasPending()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+            }
+        }
+        // whatever got in before close()
+        while (drain() > 0) {
+        }
+        for (LogSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                System.err.println("Error closing log sink: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean hasPending() {
+        return ring[(int) (head & mask)].sequence == head + 1;
+    }
+
+    private int drain() {
+        int count = 0;
+        while (count < MAX_BATCH) {
+            LogEvent event = ring[(int) (head & mask)];
+            if (event.sequence != head + 1) {
+                break;
+            }
+            write(event.timestamp, event.level, String.valueOf(event.message));
+            event.message = null;
+            // free for the producer one lap later
+            event.sequence = head + ring.length;
+            head++;
+            count++;
+        }
+
+        long lost = dropped.sum();
+        if (lost > droppedReported) {
+            write(System.currentTimeMillis(), LogLevel.WARN, "Log buffer full, " + (lost - droppedReported) + " log lines dropped");
+            droppedReported = lost;
+            count++;
+        }
+
+        if (count > 0) {
+            for (LogSink sink : sinks) {
+                try {
+                    sink.flush();
+                } catch (IOException e) {
+                    System.err.println("Error flushing log sink: " + e.getMessage());
+                }
+            }
+        }
+        return count;
+    }
+
+    // a broken sink loses its lines, the others and the server carry on
+    private void write(long timestamp, LogLevel eventLevel, String message) {
+        for (LogSink sink : sinks) {
+            try {
+                sink.write(timestamp, eventLevel, message);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error writing log line: " + e.getMessage());
+            }
+        }
+    }
+
+    // drains what is already queued, later events are dropped silently
+    public void close() {
+        if (!isRunning.compareAndSet(true, false)) {
+            return;
+        }
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(CLOSE_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+}
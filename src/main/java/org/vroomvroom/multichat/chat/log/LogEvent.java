@@ -0,0 +1,16 @@
+package org.vroomvroom.multichat.chat.log;
+
+// one preallocated slot of the ring, reused forever
+// sequence says who owns the slot: == position means free for that producer, == position + 1 means published
+final class LogEvent {
+
+    volatile long sequence;
+    long timestamp;
+    LogLevel level;
+    // rendered with String.valueOf on the writer thread, so callers can pass the object instead of building a String
+    Object message;
+
+    LogEvent(long sequence) {
+        this.sequence = sequence;
+    }
+}
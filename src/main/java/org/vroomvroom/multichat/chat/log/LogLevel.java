@@ -0,0 +1,13 @@
+package org.vroomvroom.multichat.chat.log;
+
+// DEBUG is the per-message chatter (every relayed line), INFO and up is joins, leaves, server state and errors
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR;
+
+    public boolean includes(LogLevel other) {
+        return other.ordinal() >= ordinal();
+    }
+}
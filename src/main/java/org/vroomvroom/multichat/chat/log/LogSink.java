@@ -0,0 +1,16 @@
+package org.vroomvroom.multichat.chat.log;
+
+import java.io.IOException;
+
+// where rendered log lines end up, only ever called from the log writer thread
+public interface LogSink {
+
+    void write(long timestamp, LogLevel level, String message) throws IOException;
+
+    // after every drained batch
+    default void flush() throws IOException {
+    }
+
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,96 @@
+package org.vroomvroom.multichat.chat.log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// server.log in the given directory, renamed to server.log.1 (and older ones shifted up) once it reaches maxBytes
+// only the log writer thread touches it, so no locking
+public class RotatingFileSink implements LogSink {
+
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 5;
+
+    private final Path directory;
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private Writer writer;
+    // reused for every line, writer thread only
+    private final StringBuilder line = new StringBuilder(256);
+    private long size;
+
+    public RotatingFileSink(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    public RotatingFileSink(Path directory, long maxBytes, int maxFiles) throws IOException {
+        if (maxBytes < 1 || maxFiles < 1) {
+            throw new IllegalArgumentException("Log file size and count must be positive");
+        }
+        this.directory = directory;
+        this.file = directory.resolve("server.log");
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    private void open() throws IOException {
+        size = Files.exists(file) ? Files.size(file) : 0;
+        writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    }
+
+    @Override
+    public void write(long timestamp, LogLevel level, String message) throws IOException {
+        line.setLength(0);
+        TimestampFormat.DATE_TIME.appendWithMillis(line, timestamp)
+                .append(' ').append(level).append(' ').append(message).append(System.lineSeparator());
+        // close enough for ASCII logs, a rotation a few bytes late doesn't matter
+        if (size > 0 && size + line.length() > maxBytes) {
+            rotate();
+        }
+        writer.append(line);
+        size += line.length();
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path older = directory.resolve("server.log." + i);
+            if (Files.exists(older)) {
+                if (i == maxFiles - 1) {
+                    Files.delete(older);
+                } else {
+                    Files.move(older, directory.resolve("server.log." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        if (maxFiles > 1) {
+            Files.move(file, directory.resolve("server.log.1"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        open();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
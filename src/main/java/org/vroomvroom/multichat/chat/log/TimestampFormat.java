@@ -0,0 +1,61 @@
+package org.vroomvroom.multichat.chat.log;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// shared, thread safe timestamp text for log and chat lines
+// the seconds part is formatted once per second and cached, every line within that second reuses the same String
+// the cache is a small direct-mapped table so re-rendering older rows (scrolling a view) doesn't thrash it
+public final class TimestampFormat {
+
+    // [HH:mm:ss] prefix of every view and console line
+    public static final TimestampFormat TIME = new TimestampFormat("HH:mm:ss");
+    // log files
+    public static final TimestampFormat DATE_TIME = new TimestampFormat("yyyy-MM-dd HH:mm:ss");
+
+    private static final int SLOTS = 64;
+
+    // immutable, so publishing it through the array is enough
+    private record Second(long epochSecond, String text) {
+    }
+
+    private final DateTimeFormatter formatter;
+    private final AtomicReferenceArray<Second> cache = new AtomicReferenceArray<>(SLOTS);
+
+    // zone is the system default at creation, like SimpleDateFormat's
+    public TimestampFormat(String pattern) {
+        this.formatter = DateTimeFormatter.ofPattern(pattern).withZone(ZoneId.systemDefault());
+    }
+
+    // seconds resolution, epoch millis in
+    public String format(long epochMillis) {
+        long epochSecond = Math.floorDiv(epochMillis, 1000);
+        int slot = Math.floorMod(epochSecond, SLOTS);
+        Second cached = cache.get(slot);
+        if (cached == null || cached.epochSecond() != epochSecond) {
+            // two threads may both build it, same text either way
+            cached = new Second(epochSecond, formatter.format(Instant.ofEpochSecond(epochSecond)));
+            cache.set(slot, cached);
+        }
+        return cached.text();
+    }
+
+    public StringBuilder appendTo(StringBuilder line, long epochMillis) {
+        return line.append(format(epochMillis));
+    }
+
+    // seconds from the cache plus ".SSS"
+    public StringBuilder appendWithMillis(StringBuilder line, long epochMillis) {
+        int millis = Math.floorMod(epochMillis, 1000);
+        line.append(format(epochMillis)).append('.');
+        if (millis < 100) {
+            line.append('0');
+        }
+        if (millis < 10) {
+            line.append('0');
+        }
+        return line.append(millis);
+    }
+}
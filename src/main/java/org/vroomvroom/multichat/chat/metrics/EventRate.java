@@ -0,0 +1,45 @@
+package org.vroomvroom.multichat.chat.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// events per second over a sliding window of one-second slots, lock free
+// a slot is recycled when its second comes round again; the reset can race with a concurrent mark
+// and lose that one event, which is fine for a rate shown to humans
+public class EventRate {
+
+    private static final int SLOTS = 64;
+
+    private final int windowSeconds;
+    private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+
+    public EventRate(int windowSeconds) {
+        if (windowSeconds < 1 || windowSeconds >= SLOTS) {
+            throw new IllegalArgumentException("Window must be between 1 and " + (SLOTS - 1) + " seconds");
+        }
+        this.windowSeconds = windowSeconds;
+    }
+
+    public void mark() {
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % SLOTS);
+        long stamp = seconds.get(slot);
+        if (stamp != second && seconds.compareAndSet(slot, stamp, second)) {
+            counts.set(slot, 0);
+        }
+        counts.incrementAndGet(slot);
+    }
+
+    // average over the last full seconds of the window, the current second is still filling up
+    public double perSecond() {
+        long now = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for (long second = now - windowSeconds; second < now; second++) {
+            int slot = (int) (second % SLOTS);
+            if (seconds.get(slot) == second) {
+                total += counts.get(slot);
+            }
+        }
+        return (double) total / windowSeconds;
+    }
+}
@@ -0,0 +1,70 @@
+package org.vroomvroom.multichat.chat.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// named counters, histograms, rates and gauges
+// hot paths keep the returned LongAdder/histogram in a field, the map is only for registration and snapshots
+public class MetricsRegistry {
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, EventRate> rates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    // recorded in nanoseconds, snapshots show microseconds
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    public EventRate rate(String name, int windowSeconds) {
+        return rates.computeIfAbsent(name, n -> new EventRate(windowSeconds));
+    }
+
+    // read at snapshot time only, like queue depths
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // flat name -> value view, sorted by name, histograms expanded into count/percentiles
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        rates.forEach((name, rate) -> values.put(name + ".per_sec", rate.perSecond()));
+        histograms.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".p50_us", histogram.percentile(0.5) / 1000);
+            values.put(name + ".p99_us", histogram.percentile(0.99) / 1000);
+            values.put(name + ".p999_us", histogram.percentile(0.999) / 1000);
+            values.put(name + ".max_us", histogram.getMax() / 1000);
+        });
+        return values;
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024).append("{\n");
+        Map<String, Number> values = snapshot();
+        int i = 0;
+        for (Map.Entry<String, Number> entry : values.entrySet()) {
+            json.append("  \"").append(entry.getKey()).append("\": ").append(format(entry.getValue()));
+            json.append(++i < values.size() ? ",\n" : "\n");
+        }
+        return json.append("}\n").toString();
+    }
+
+    public static String format(Number value) {
+        if (value instanceof Double d) {
+            return String.format(Locale.ROOT, "%.2f", d);
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package org.vroomvroom.multichat.chat.protocol;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// raw deflate for frame bodies, with a few Deflaters/Inflaters kept around instead of one (plus its native buffers) per message
+// the server builds one from its settings, bodies under the threshold aren't worth the CPU and go out as they are
+// inflating needs no settings, whoever reads a compressed frame uses the shared inflater pool
+public final class CompressionCodec {
+
+    // more than the threads that ever compress at once (fan-out, replays), extras are simply ended
+    private static final int POOL_SIZE = 8;
+    private static final ArrayBlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final int threshold;
+    private final int level;
+    private final ArrayBlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    // threshold 0 turns compression off
+    public CompressionCodec(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    public boolean enabled() {
+        return threshold > 0;
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    public boolean worthCompressing(int length) {
+        return threshold > 0 && length >= threshold;
+    }
+
+    // null when the result wouldn't be smaller, the caller sends the plain body then
+    public byte[] deflate(byte[] data) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] out = new byte[data.length];
+            int length = deflater.deflate(out);
+            return deflater.finished() && length < data.length ? Arrays.copyOf(out, length) : null;
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    // rawLength comes off the wire, checked against the frame limit before anything is allocated
+    public static byte[] inflate(byte[] data, int offset, int length, int rawLength) throws IOException {
+        if (rawLength < 0 || rawLength > Frame.MAX_LENGTH) {
+            throw new IOException("Invalid uncompressed length: " + rawLength);
+        }
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setInput(data, offset, length);
+            byte[] out = new byte[rawLength];
+            int filled = 0;
+            while (filled < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(out, filled, rawLength - filled);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                filled += n;
+            }
+            if (filled != rawLength) {
+                throw new IOException("Compressed body inflated to " + filled + " bytes, expected " + rawLength);
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed body: " + e.getMessage());
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.vroomvroom.multichat.chat.protocol;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// one binary frame on the wire:
+//   int32 length (of everything after it) | type byte | [int64 sequence] | uint16 subject length | subject | body
+// subject is the sender for CHAT and the client for JOIN/LEAVE, empty otherwise
+// both subject and body are raw UTF-8, the server copies them around without decoding
+// the sequence is only there when the type byte has SEQUENCED_FLAG set (protocol v2 broadcasts), 0 means none
+// with COMPRESSED_FLAG (v4, server to client only) the body is int32 uncompressed length | raw deflate of it,
+// decode() hands out the inflated body so nobody past it can tell
+public record Frame(FrameType type, long sequence, byte[] subject, byte[] body) {
+
+    public static final int HEADER_LENGTH = 4;
+    public static final int MAX_LENGTH = 64 * 1024;
+    public static final int SEQUENCED_FLAG = 0x80;
+    public static final int COMPRESSED_FLAG = 0x40;
+    public static final int MAX_SUBJECT_LENGTH = 0xffff;
+    // everything a frame can add around subject and body: type byte, sequence, subject length, uncompressed length
+    public static final int MAX_OVERHEAD = 1 + 8 + 2 + 4;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    public Frame(FrameType type, byte[] subject, byte[] body) {
+        this(type, 0, subject, body);
+    }
+
+    public static Frame of(FrameType type, String subject, String body) {
+        return new Frame(type, subject.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Frame of(FrameType type, String body) {
+        return new Frame(type, EMPTY, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static byte[] encode(FrameType type, byte[] subject, byte[] body) {
+        return encode(type, 0, subject, body);
+    }
+
+    public static byte[] encode(FrameType type, long sequence, byte[] subject, byte[] body) {
+        return encode(type, sequence, subject, -1, body);
+    }
+
+    // deflated is the raw deflate of a body rawLength bytes long
+    public static byte[] encodeCompressed(FrameType type, long sequence, byte[] subject, int rawLength, byte[] deflated) {
+        return encode(type, sequence, subject, rawLength, deflated);
+    }
+
+    // rawLength -1 for a plain body; a frame no reader would accept is refused here rather than sent
+    private static byte[] encode(FrameType type, long sequence, byte[] subject, int rawLength, byte[] body) {
+        if (subject.length > MAX_SUBJECT_LENGTH) {
+            throw new IllegalArgumentException("Frame subject too long: " + subject.length + " bytes");
+        }
+        int sequenceLength = sequence > 0 ? 8 : 0;
+        int rawLengthLength = rawLength >= 0 ? 4 : 0;
+        int length = 1 + sequenceLength + 2 + subject.length + rawLengthLength + body.length;
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Frame too long: " + length + " bytes");
+        }
+        byte[] frame = new byte[HEADER_LENGTH + length];
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        int offset = 4;
+        int code = type.code() | (rawLength >= 0 ? COMPRESSED_FLAG : 0);
+        if (sequence > 0) {
+            frame[offset++] = (byte) (code | SEQUENCED_FLAG);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                frame[offset++] = (byte) (sequence >>> shift);
+            }
+        } else {
+            frame[offset++] = (byte) code;
+        }
+        frame[offset++] = (byte) (subject.length >>> 8);
+        frame[offset++] = (byte) subject.length;
+        System.arraycopy(subject, 0, frame, offset, subject.length);
+        offset += subject.length;
+        if (rawLength >= 0) {
+            frame[offset++] = (byte) (rawLength >>> 24);
+            frame[offset++] = (byte) (rawLength >>> 16);
+            frame[offset++] = (byte) (rawLength >>> 8);
+            frame[offset++] = (byte) rawLength;
+        }
+        System.arraycopy(body, 0, frame, offset, body.length);
+        return frame;
+    }
+
+    public byte[] encode() {
+        return encode(type, sequence, subject, body);
+    }
+
+    // everything after the length field
+    public static Frame decode(byte[] data, int offset, int length) throws IOException {
+        if (length < 3) {
+            throw new IOException("Frame too short: " + length + " bytes");
+        }
+        int end = offset + length;
+        byte code = data[offset++];
+        long sequence = 0;
+        if ((code & SEQUENCED_FLAG) != 0) {
+            if (length < 1 + 8 + 2) {
+                throw new IOException("Sequenced frame too short: " + length + " bytes");
+            }
+            for (int i = 0; i < 8; i++) {
+                sequence = (sequence << 8) | (data[offset++] & 0xff);
+            }
+            code &= ~SEQUENCED_FLAG;
+        }
+        boolean compressed = (code & COMPRESSED_FLAG) != 0;
+        code &= ~COMPRESSED_FLAG;
+        FrameType type = FrameType.fromCode(code);
+        if (type == null) {
+            throw new IOException("Unknown frame type: " + code);
+        }
+        int subjectLength = ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+        int subjectStart = offset + 2;
+        if (subjectStart + subjectLength > end) {
+            throw new IOException("Frame subject longer than frame");
+        }
+        byte[] subject = Arrays.copyOfRange(data, subjectStart, subjectStart + subjectLength);
+        int bodyStart = subjectStart + subjectLength;
+        if (compressed) {
+            if (bodyStart + 4 > end) {
+                throw new IOException("Compressed frame too short");
+            }
+            int rawLength = ((data[bodyStart] & 0xff) << 24) | ((data[bodyStart + 1] & 0xff) << 16)
+                    | ((data[bodyStart + 2] & 0xff) << 8) | (data[bodyStart + 3] & 0xff);
+            byte[] body = CompressionCodec.inflate(data, bodyStart + 4, end - bodyStart - 4, rawLength);
+            return new Frame(type, sequence, subject, body);
+        }
+        byte[] body = Arrays.copyOfRange(data, bodyStart, end);
+        return new Frame(type, sequence, subject, body);
+    }
+
+    public static void checkLength(int length) throws IOException {
+        if (length < 3 || length > MAX_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    public String subjectText() {
+        return new String(subject, StandardCharsets.UTF_8);
+    }
+
+    public String bodyText() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    public String render() {
+        return type.render(subjectText(), bodyText());
+    }
+}
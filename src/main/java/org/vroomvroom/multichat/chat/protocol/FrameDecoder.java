@@ -0,0 +1,49 @@
+package org.vroomvroom.multichat.chat.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.BooleanSupplier;
+
+// incremental frame parser for non-blocking reads, frames may arrive in any number of pieces
+public class FrameDecoder {
+
+    public interface FrameHandler {
+        void onFrame(Frame frame) throws IOException;
+    }
+
+    private final byte[] header = new byte[Frame.HEADER_LENGTH];
+    private int headerFill = 0;
+    private byte[] data;
+    private int dataFill = 0;
+
+    // consumes the buffer, handing out every frame it completes
+    // stop is checked after every frame, whatever it leaves stays in the buffer for the next call
+    public void decode(ByteBuffer in, FrameHandler handler, BooleanSupplier stop) throws IOException {
+        while (in.hasRemaining() && !stop.getAsBoolean()) {
+            if (data == null) {
+                while (headerFill < Frame.HEADER_LENGTH && in.hasRemaining()) {
+                    header[headerFill++] = in.get();
+                }
+                if (headerFill < Frame.HEADER_LENGTH) {
+                    return;
+                }
+                int length = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16)
+                        | ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+                Frame.checkLength(length);
+                data = new byte[length];
+                dataFill = 0;
+            }
+
+            int chunk = Math.min(in.remaining(), data.length - dataFill);
+            in.get(data, dataFill, chunk);
+            dataFill += chunk;
+
+            if (dataFill == data.length) {
+                Frame frame = Frame.decode(data, 0, data.length);
+                data = null;
+                headerFill = 0;
+                handler.onFrame(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.vroomvroom.multichat.chat.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+// type byte of a binary frame
+// each type also knows how it looks as a legacy text line: before + subject + between + body + after
+public enum FrameType {
+    CHAT(1, "", ": ", ""),
+    JOIN(2, "", " (", ") has joined the chat"),
+    LEAVE(3, "SERVER: Client ", " has left the chat", ""),
+    SYSTEM(4, "", "", ""),
+    ACK(5, "", "", ""),
+    // v3 heartbeats, either side may ping and the other answers with a pong; never shown
+    PING(6, "", "", ""),
+    PONG(7, "", "", ""),
+    // v5 roster snapshot or delta, subject says which; never shown as a line
+    ROSTER(8, "", "", "");
+
+    private final byte code;
+    private final String before;
+    private final String between;
+    private final String after;
+    private final byte[] beforeBytes;
+    private final byte[] betweenBytes;
+    private final byte[] afterBytes;
+
+    FrameType(int code, String before, String between, String after) {
+        this.code = (byte) code;
+        this.before = before;
+        this.between = between;
+        this.after = after;
+        this.beforeBytes = before.getBytes(StandardCharsets.UTF_8);
+        this.betweenBytes = between.getBytes(StandardCharsets.UTF_8);
+        this.afterBytes = after.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public static FrameType fromCode(byte code) {
+        for (FrameType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    // text shown to legacy clients and in the client tab
+    public String render(String subject, String body) {
+        if (subject.isEmpty() && body.isEmpty()) {
+            return before + after;
+        }
+        if (subject.isEmpty()) {
+            return before + body + after;
+        }
+        return before + subject + between + body + after;
+    }
+
+    // same as render, straight from UTF-8 bytes without decoding them, newline terminated
+    public byte[] renderLine(byte[] subject, byte[] body) {
+        byte[] middle = subject.length == 0 ? new byte[0] : betweenBytes;
+        byte[] line = new byte[beforeBytes.length + subject.length + middle.length + body.length + afterBytes.length + 1];
+        int offset = 0;
+        offset = put(line, offset, beforeBytes);
+        offset = put(line, offset, subject);
+        offset = put(line, offset, middle);
+        offset = put(line, offset, body);
+        offset = put(line, offset, afterBytes);
+        line[offset] = '\n';
+        return line;
+    }
+
+    private static int put(byte[] target, int offset, byte[] source) {
+        System.arraycopy(source, 0, target, offset, source.length);
+        return offset + source.length;
+    }
+}
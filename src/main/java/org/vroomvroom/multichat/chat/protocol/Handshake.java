@@ -0,0 +1,75 @@
+package org.vroomvroom.multichat.chat.protocol;
+
+import java.util.List;
+
+// a client's first line, in whichever of the three formats it came
+// clientName is null when the client didn't send one, version is 0 for the text formats
+// resumeAfter is the last sequence a v2 client saw before reconnecting, 0 for a fresh join (and every other format)
+// compression is a v4 client asking for deflated frames
+public record Handshake(Format format, int version, int clientId, String clientName, long resumeAfter, boolean compression) {
+
+    public enum Format {
+        BINARY,
+        CLIENT_INFO,
+        // oldest clients, id only
+        CLIENT_ID
+    }
+
+    private static final String CLIENT_INFO_PREFIX = "CLIENT_INFO:";
+    private static final String CLIENT_ID_PREFIX = "CLIENT_ID:";
+
+    // null for a line that is no handshake at all
+    // IllegalArgumentException (NumberFormatException mostly) for one that is, but broken
+    public static Handshake parse(String line) {
+        if (line.startsWith(Protocol.HELLO_PREFIX)) {
+            String[] parts = line.substring(Protocol.HELLO_PREFIX.length()).split(":", 2);
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("missing client id");
+            }
+            int version = Integer.parseInt(parts[0]);
+            if (version < 1) {
+                throw new IllegalArgumentException("unsupported version");
+            }
+            if (version >= Protocol.COMPRESSION_VERSION) {
+                // id:resumeAfter:features:name
+                String[] rest = parts[1].split(":", 4);
+                if (rest.length < 3) {
+                    throw new IllegalArgumentException("missing features");
+                }
+                long resumeAfter = Long.parseLong(rest[1]);
+                if (resumeAfter < 0) {
+                    throw new IllegalArgumentException("negative resume sequence");
+                }
+                boolean compression = List.of(rest[2].split(",")).contains(Protocol.DEFLATE_FEATURE);
+                return new Handshake(Format.BINARY, version, Integer.parseInt(rest[0]),
+                        rest.length >= 4 ? rest[3] : null, resumeAfter, compression);
+            }
+            if (version >= Protocol.SEQUENCE_VERSION) {
+                // id:resumeAfter:name
+                String[] rest = parts[1].split(":", 3);
+                if (rest.length < 2) {
+                    throw new IllegalArgumentException("missing resume sequence");
+                }
+                long resumeAfter = Long.parseLong(rest[1]);
+                if (resumeAfter < 0) {
+                    throw new IllegalArgumentException("negative resume sequence");
+                }
+                return new Handshake(Format.BINARY, version, Integer.parseInt(rest[0]),
+                        rest.length >= 3 ? rest[2] : null, resumeAfter, false);
+            }
+            // id:name
+            String[] rest = parts[1].split(":", 2);
+            return new Handshake(Format.BINARY, version, Integer.parseInt(rest[0]),
+                    rest.length >= 2 ? rest[1] : null, 0, false);
+        }
+        if (line.startsWith(CLIENT_INFO_PREFIX)) {
+            String[] parts = line.substring(CLIENT_INFO_PREFIX.length()).trim().split(":", 2);
+            return new Handshake(Format.CLIENT_INFO, 0, Integer.parseInt(parts[0]),
+                    parts.length >= 2 ? parts[1] : null, 0, false);
+        }
+        if (line.startsWith(CLIENT_ID_PREFIX)) {
+            return new Handshake(Format.CLIENT_ID, 0, Integer.parseInt(line.substring(CLIENT_ID_PREFIX.length()).trim()), null, 0, false);
+        }
+        return null;
+    }
+}
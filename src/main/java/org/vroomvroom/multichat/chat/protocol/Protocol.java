@@ -0,0 +1,55 @@
+package org.vroomvroom.multichat.chat.protocol;
+
+// handshake bits shared by client and server
+// legacy clients open with "CLIENT_INFO:<id>:<name>" (or older "CLIENT_ID:<id>") and stay on text lines
+// binary clients open with "MULTICHAT/<version>:<id>:<name>", the server answers with an ACK frame
+// carrying "<version>:<clientId>" and both sides speak frames from then on
+// from v2 on the hello is "MULTICHAT/<version>:<id>:<resumeAfter>:<name>" and broadcasts carry the server's sequence;
+// resumeAfter is the last sequence the client saw (0 for none), the server replays what it missed instead of the usual history
+// and its ACK is "<version>:<clientId>:<lastSequence>"
+// v3 adds PING/PONG frames and appends the server's ping interval in seconds to the ACK (0 = the server won't ping);
+// a peer quiet for longer than that can be pinged, one that doesn't answer is gone
+// v4 clients may ask for compression, the hello becomes "MULTICHAT/<version>:<id>:<resumeAfter>:<features>:<name>"
+// with features "deflate" or "-"; the ACK appends the body size from which frames come deflated (0 = never)
+// v5 adds ROSTER frames: subject "snapshot" (replace what you have) or "delta", body one "+<room>\t<name>" (online, in that room)
+// or "-\t<name>" (gone) per line; a client gets a snapshot when it is admitted and deltas after that
+// room commands are plain chat text in either format: "/join <room>", "/leave", "/rooms", and so is
+// "/msg <name or #id> <text>", which only the named client gets (as a CHAT with "[private] <sender>" for subject)
+public final class Protocol {
+
+    public static final String HELLO_PREFIX = "MULTICHAT/";
+    public static final int VERSION = 5;
+    // first version with sequenced broadcasts and resume
+    public static final int SEQUENCE_VERSION = 2;
+    // first version that knows PING/PONG, older clients would choke on the frame type
+    public static final int HEARTBEAT_VERSION = 3;
+    // first version with a features field in the hello and compressed frames
+    public static final int COMPRESSION_VERSION = 4;
+    public static final String DEFLATE_FEATURE = "deflate";
+    // first version that gets the roster
+    public static final int ROSTER_VERSION = 5;
+
+    public static final String JOIN_COMMAND = "/join";
+    public static final String LEAVE_COMMAND = "/leave";
+    public static final String ROOMS_COMMAND = "/rooms";
+    public static final String MSG_COMMAND = "/msg";
+    public static final String SEARCH_COMMAND = "/search";
+
+    private Protocol() {
+    }
+
+    public static String helloLine(int clientId, String clientName, long resumeAfter, boolean compression) {
+        return HELLO_PREFIX + VERSION + ":" + clientId + ":" + resumeAfter + ":" + (compression ? DEFLATE_FEATURE : "-")
+                + ":" + clientName;
+    }
+
+    // true for chat text that is really a command, checked on raw bytes so plain chat is never decoded
+    public static boolean isCommand(byte[] text) {
+        return text.length > 1 && text[0] == '/';
+    }
+
+    // highest version both sides speak
+    public static int negotiate(int requestedVersion) {
+        return Math.min(requestedVersion, VERSION);
+    }
+}
@@ -0,0 +1,19 @@
+package org.vroomvroom.multichat.chat.protocol;
+
+// what a connection speaks after the handshake
+// LINE is the legacy text protocol, FRAME binary v1, SEQUENCED_FRAME binary v2 where broadcasts carry their sequence,
+// COMPRESSED_FRAME a v4 client that asked for compression: sequenced frames, bodies over the server's threshold deflated
+public enum WireFormat {
+    LINE,
+    FRAME,
+    SEQUENCED_FRAME,
+    COMPRESSED_FRAME;
+
+    public boolean isBinary() {
+        return this != LINE;
+    }
+
+    public static WireFormat forVersion(int version) {
+        return version >= Protocol.SEQUENCE_VERSION ? SEQUENCED_FRAME : FRAME;
+    }
+}
@@ -0,0 +1,289 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// takes broadcasts off the sender's read loop
+// publish() encodes once and queues, a single dispatcher thread hands the same bytes to every recipient
+// one thread also means everybody sees broadcasts in the same order
+// room membership changes run on the same thread, so a move lands at an exact point of the stream
+// every broadcast gets the next server wide sequence here, the journal keeps it and v2 clients see it on the wire
+public class BroadcastFanout {
+
+    // how long a replay waits for the journal writer to catch up with the join point
+    private static final long REPLAY_COMMIT_WAIT_MS = 2_000;
+    // a client that missed more than this on reconnect gets the usual last replayCount instead of everything
+    private static final long MAX_RESUME_GAP = 10_000;
+    private static final Runnable STOP = () -> {
+    };
+
+    private final List<ClientSession> clients;
+    private final RoomRegistry rooms;
+    private final AsyncLog log;
+    private final ServerMetrics metrics;
+    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private Thread dispatchThread;
+    private MessageJournal journal;
+    // null outside a cluster
+    private ClusterNode cluster;
+    // null when nobody asked for presence (benchmarks)
+    private RosterService roster;
+    // only written by the fan-out thread once started, read by handshakes for the ack
+    private volatile long lastSequence = 0;
+    private int replayCount;
+    private ExecutorService replayExecutor;
+
+    public BroadcastFanout(List<ClientSession> clients, RoomRegistry rooms, AsyncLog log, ServerMetrics metrics) {
+        this.clients = clients;
+        this.rooms = rooms;
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    // before start(), every broadcast from then on is journaled and joining clients get the last replayCount of their room
+    // the journal belongs to the fan-out after this, it is closed once the last broadcast drained
+    public void attachJournal(MessageJournal journal, int replayCount) {
+        this.journal = journal;
+        this.replayCount = replayCount;
+        // sequences carry on from the last run, a reconnecting client's resume point stays meaningful
+        this.lastSequence = journal.lastSequence();
+        this.replayExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    // before start(), broadcasts that start here are relayed to the other nodes from then on
+    public void attachCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    // before start(), room moves and parts from then on are reported to it
+    public void attachRoster(RosterService roster) {
+        this.roster = roster;
+    }
+
+    public void start() {
+        if (!isRunning.compareAndSet(false, true)) {
+            return;
+        }
+        dispatchThread = new Thread(this::dispatchLoop, "broadcast-fanout");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+    }
+
+    private void submit(Runnable task) {
+        if (isRunning.get()) {
+            queue.offer(task);
+        }
+    }
+
+    // to everybody in the member's room (as of fan-out time), the member itself only if echo is set
+    public void publish(ClientSession member, EncodedMessage message, boolean echo) {
+        submit(() -> deliver(member.getRoom(), message, echo ? null : member));
+    }
+
+    // server wide, every ready client no matter the room
+    public void publishToAll(EncodedMessage message) {
+        submit(() -> deliver(null, message, null));
+    }
+
+    // relayed by another node: delivered to our members of that room ("" is everybody), never forwarded again
+    // gets our own sequence like any broadcast, so resume and history work per node
+    void publishFromPeer(String roomName, EncodedMessage message) {
+        submit(() -> {
+            ChatRoom room = roomName.isEmpty() ? null : rooms.get(roomName);
+            if (room == null && !roomName.isEmpty()) {
+                // nobody here is in that room, still journaled for whoever joins it later
+                stampAndJournal(roomName, message);
+                return;
+            }
+            dispatch(room, message, null);
+        });
+    }
+
+    // first admission after the handshake, the session starts receiving broadcasts in the lobby at this point
+    // resumeAfter > 0 replays what the client missed since that sequence instead of the last replayCount
+    public void admit(ClientSession session, long resumeAfter) {
+        submit(() -> moveNow(session, RoomRegistry.LOBBY, false, resumeAfter));
+    }
+
+    public void moveTo(ClientSession session, String roomName) {
+        submit(() -> moveNow(session, roomName, true, 0));
+    }
+
+    // disconnect, after its "left" broadcast went out
+    public void part(ClientSession session) {
+        submit(() -> {
+            ChatRoom room = session.getRoom();
+            if (room != null) {
+                room.remove(session);
+                rooms.removeIfEmpty(room);
+                if (roster != null) {
+                    roster.left(session);
+                }
+            }
+        });
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (isRunning.get() || !queue.isEmpty()) {
+                Runnable task = queue.take();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Fan-out task failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (journal != null) {
+                replayExecutor.shutdownNow();
+                journal.close();
+            }
+        }
+    }
+
+    // history up to the move is replayed on the side, anything after it is held back until the replay is done
+    private void moveNow(ClientSession session, String roomName, boolean announce, long resumeAfter) {
+        if (!session.isConnected()) {
+            return;
+        }
+        ChatRoom from = session.getRoom();
+        ChatRoom to = rooms.getOrCreate(roomName);
+        if (from == to) {
+            session.sendMessage("SERVER: You are already in #" + to.getName());
+            return;
+        }
+        if (from != null) {
+            from.remove(session);
+            rooms.removeIfEmpty(from);
+        }
+        to.add(session);
+        if (roster != null) {
+            roster.moved(session, to.getName());
+            if (from == null) {
+                roster.subscribe(session);
+            }
+        }
+
+        if (announce) {
+            session.sendMessage("SERVER: You are now in #" + to.getName());
+        }
+        long upTo = journal == null ? 0 : journal.lastSequence();
+        boolean resume = resumeAfter > 0 && resumeAfter < upTo && upTo - resumeAfter <= MAX_RESUME_GAP;
+        boolean replay = journal != null && upTo > resumeAfter && (resume || replayCount > 0);
+        long token = session.enterRoom(to, replay);
+        if (replay) {
+            long after = resume ? resumeAfter : 0;
+            replayExecutor.execute(() -> replay(session, to, after, upTo, token));
+        }
+
+        if (announce) {
+            if (from != null) {
+                deliver(from, EncodedMessage.ofLine("SERVER: " + session.getClientName() + " left #" + from.getName()), session);
+            }
+            deliver(to, EncodedMessage.ofLine("SERVER: " + session.getClientName() + " joined #" + to.getName()), session);
+        }
+    }
+
+    // on its own thread, a big history or a slow joiner never holds up the live stream
+    // after > 0 is a resume: everything visible in the room since then, otherwise the last replayCount
+    private void replay(ClientSession session, ChatRoom room, long after, long upTo, long token) {
+        try {
+            if (journal.awaitCommitted(upTo, REPLAY_COMMIT_WAIT_MS)) {
+                List<JournalEntry> entries = after > 0
+                        ? journal.readSince(after, upTo)
+                        : journal.readLast(room.getName(), replayCount, upTo);
+                for (JournalEntry entry : entries) {
+                    if (entry.isVisibleIn(room.getName()) && !session.replay(entry.toMessage(), token)) {
+                        break;
+                    }
+                }
+            } else {
+                log.warn("History for " + session.getClientName() + " skipped, journal is behind");
+            }
+        } catch (IOException e) {
+            log.warn("History replay for " + session.getClientName() + " failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            session.endReplay(token);
+        }
+    }
+
+    // room null means every client; anything that starts here also goes to the other nodes
+    private void deliver(ChatRoom room, EncodedMessage message, ClientSession skip) {
+        dispatch(room, message, skip);
+        if (cluster != null) {
+            cluster.forward(room == null ? "" : room.getName(), message);
+        }
+    }
+
+    private void stampAndJournal(String roomName, EncodedMessage message) {
+        long sequence = lastSequence + 1;
+        lastSequence = sequence;
+        message.stamp(sequence);
+        if (journal != null) {
+            journal.append(roomName, message);
+        }
+    }
+
+    private void dispatch(ChatRoom room, EncodedMessage message, ClientSession skip) {
+        long start = System.nanoTime();
+        stampAndJournal(room == null ? "" : room.getName(), message);
+        List<ClientSession> recipients = room == null ? clients : room.members();
+        int delivered = 0;
+        for (ClientSession client : recipients) {
+            if (client != skip && client.isReady()) {
+                try {
+                    client.deliver(message);
+                    delivered++;
+                } catch (RuntimeException e) {
+                    // one broken recipient must not starve the rest
+                    log.warn("Broadcast to " + client.getClientName() + " failed: " + e.getMessage());
+                }
+            }
+        }
+        if (room != null) {
+            room.recordBroadcast(message.length(), delivered);
+        }
+        metrics.fanoutTime.record(System.nanoTime() - start);
+    }
+
+    // lets already queued broadcasts (like the "left the chat" ones) drain before the thread exits
+    public void stop() {
+        if (isRunning.compareAndSet(true, false)) {
+            queue.offer(STOP);
+        }
+    }
+
+    // stopping thread, returns once the dispatcher drained and closed the journal (or the wait ran out)
+    public void awaitTermination(long timeoutMillis) {
+        Thread thread = dispatchThread;
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // last sequence handed out
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    public MessageJournal getJournal() {
+        return journal;
+    }
+}
@@ -0,0 +1,55 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// one named room and its members
+// membership only changes on the fan-out thread (joins and leaves are rare), broadcasts iterate the snapshot array
+public class ChatRoom {
+
+    private final String name;
+    private final CopyOnWriteArrayList<ClientSession> members = new CopyOnWriteArrayList<>();
+    // counted on the fan-out thread, read by the server tab
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    ChatRoom(String name) {
+        this.name = name;
+    }
+
+    void add(ClientSession session) {
+        members.addIfAbsent(session);
+    }
+
+    void remove(ClientSession session) {
+        members.remove(session);
+    }
+
+    List<ClientSession> members() {
+        return members;
+    }
+
+    void recordBroadcast(int length, int recipients) {
+        messages.increment();
+        bytesOut.add((long) length * recipients);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+}
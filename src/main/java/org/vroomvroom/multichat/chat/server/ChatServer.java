@@ -1,77 +1,285 @@
 package org.vroomvroom.multichat.chat.server;
 
 import org.vroomvroom.multichat.chat.client.ClientHandler;
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.client.NioClientHandler;
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+import org.vroomvroom.multichat.chat.log.LogSink;
+import org.vroomvroom.multichat.chat.log.RotatingFileSink;
+import org.vroomvroom.multichat.chat.protocol.CompressionCodec;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ChatServer implements Runnable {
 
+    // a handful of selector threads is plenty, they never block
+    private static final int IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    // log events waiting for the writer, beyond this they are dropped rather than stalling an I/O thread
+    private static final int LOG_BUFFER_SIZE = 1 << 16;
+    // how long a stopping server waits for queued broadcasts (and their log lines) to drain
+    private static final long FANOUT_DRAIN_MS = 2_000;
+
+    private final ServerConfig config;
     private final int port;
     private final int maxClients;
-    private final ServerTabController controller;
-    private final CopyOnWriteArrayList<ClientHandler> clients;
+    private final TransportMode transportMode;
+    private final OutboundSettings outboundSettings;
+    private final JournalSettings journalSettings;
+    private final ServerListener listener;
+    private final AsyncLog log;
+    private final CopyOnWriteArrayList<ClientSession> clients;
+    private final RoomRegistry rooms = new RoomRegistry();
+    private final RosterService roster;
+    // only with a journal, it is what the index is rebuilt from and where hits are read back
+    private volatile SearchIndex search;
+    // handshaken sessions by id and name, for direct messages
+    private final SessionIndex sessions = new SessionIndex();
+    private final BroadcastFanout fanout;
+    private final ServerMetrics metrics;
+    // null with heartbeats off
+    private final IdleReaper reaper;
+    private final RateLimiter rateLimiter;
+    // shared by every session that negotiated compression, holds the deflater pool
+    private final CompressionCodec compression;
+    // null outside a cluster
+    private final ClusterNode cluster;
     private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] eventLoops;
     private ExecutorService clientPool;
     private AtomicBoolean isRunning = new AtomicBoolean(true);
+    // released once the socket is bound, or when run() gives up without getting that far
+    private final CountDownLatch listening = new CountDownLatch(1);
 
-    public ChatServer(int port, int maxClients, ServerTabController controller) {
-        this.port = port;
-        this.maxClients = maxClients;
-        this.controller = controller;
+    // no JavaFX in here, the listener is the only way out (server tab or console)
+    public ChatServer(ServerConfig config, ServerListener listener) {
+        this.config = config;
+        this.port = config.port();
+        this.maxClients = config.maxClients();
+        this.transportMode = config.transportMode();
+        this.outboundSettings = config.outbound();
+        this.journalSettings = config.journal();
+        this.listener = listener;
+        this.log = createLog(config.log(), listener);
         this.clients = new CopyOnWriteArrayList<>();
+        this.metrics = new ServerMetrics(clients);
+        this.fanout = new BroadcastFanout(clients, rooms, log, metrics);
+        this.rateLimiter = new RateLimiter(config.rateLimit());
+        this.compression = config.compression().newCodec();
+        this.roster = new RosterService(log, metrics);
+        fanout.attachRoster(roster);
+        this.reaper = config.heartbeat().enabled() ? new IdleReaper(config.heartbeat(), log, metrics) : null;
+        this.cluster = config.cluster().enabled() ? new ClusterNode(config.cluster(), fanout, log, metrics) : null;
+        if (cluster != null) {
+            fanout.attachCluster(cluster);
+        }
+    }
+
+    // a log directory we can't write to leaves just the listener, the server still starts
+    private static AsyncLog createLog(LogSettings settings, ServerListener listener) {
+        List<LogSink> sinks = new ArrayList<>();
+        if (settings.toListener()) {
+            sinks.add(new ListenerLogSink(listener));
+        }
+        String fileError = null;
+        if (settings.toFile()) {
+            try {
+                sinks.add(new RotatingFileSink(settings.directory()));
+            } catch (IOException e) {
+                fileError = "File log disabled, could not open " + settings.directory() + ": " + e.getMessage();
+            }
+        }
+        AsyncLog log = new AsyncLog(LOG_BUFFER_SIZE, settings.level(), sinks);
+        if (fileError != null) {
+            log.warn(fileError);
+        }
+        return log;
     }
 
     @Override
     public void run() {
         try {
 
-            // init setting
-            serverSocket = new ServerSocket(port);
-            clientPool = Executors.newFixedThreadPool(maxClients);
+            log.start();
+            openJournal();
+            fanout.start();
+            if (reaper != null) {
+                reaper.start();
+            }
+            if (cluster != null) {
+                cluster.start();
+            }
 
-            controller.logMessage("Server socket created successfully");
-            controller.logMessage("Waiting for client connections...");
+            if (transportMode == TransportMode.NIO) {
+                runNio();
+            } else {
+                runBlocking();
+            }
 
-            // client creation loop
-            while (isRunning.get()) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
+        } catch (IOException e) {
+            log.error("Failed to start server: " + e.getMessage());
+        } finally {
+            stopServer();
+            listening.countDown();
+            fanout.awaitTermination(FANOUT_DRAIN_MS);
+            log.close();
+        }
+    }
 
-                    // loop break
-                    if (!isRunning.get()) {
-                        break;
-                    }
+    // a broken journal directory costs us the history, not the server
+    private void openJournal() {
+        if (!journalSettings.enabled()) {
+            return;
+        }
+        try {
+            MessageJournal journal = MessageJournal.open(journalSettings.directory(), log);
+            fanout.attachJournal(journal, journalSettings.replayCount());
+            // attached before anything new is committed, the rebuild covers the rest
+            search = new SearchIndex(journal, log, metrics);
+            journal.attachIndex(search);
+            search.start();
+            log.info("Journal " + journalSettings.directory().toAbsolutePath() + " at sequence " + journal.lastSequence()
+                    + ", replaying last " + journalSettings.replayCount() + " on join");
+        } catch (IOException | RuntimeException e) {
+            log.warn("Journal disabled, could not open " + journalSettings.directory() + ": " + e.getMessage());
+        }
+    }
+
+    private void runBlocking() throws IOException {
+
+        // init setting
+        // maxClients is only the admission limit, the executor itself is unbounded
+        serverSocket = new ServerSocket(port);
+        listening.countDown();
+        clientPool = transportMode == TransportMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
 
-                    // client creation process
-                    ClientHandler handler = new ClientHandler(
-                            clientSocket,
-                            clients,
-                            controller
-                    );
+        log.debug("Server socket created successfully");
+        log.info("Waiting for client connections...");
 
-                    clients.add(handler);
-                    controller.incrementClientCount();
+        // client creation loop
+        while (isRunning.get()) {
+            try {
+                Socket clientSocket = serverSocket.accept();
 
-                    // execute handler in thread pool
-                    clientPool.execute(handler);
+                // loop break
+                if (!isRunning.get()) {
+                    clientSocket.close();
+                    break;
+                }
 
-                } catch (IOException e) {
-                    if (isRunning.get()) {
-                        controller.logMessage("Error accepting client: " + e.getMessage());
-                    }
+                if (clients.size() >= maxClients) {
+                    rejectFull(clientSocket);
+                    continue;
+                }
+
+                // text clients can't be pinged, the OS notices their half-open connections eventually
+                clientSocket.setKeepAlive(true);
+
+                // client creation process
+                ClientHandler handler = new ClientHandler(
+                        clientSocket,
+                        this
+                );
+
+                clients.add(handler);
+                metrics.accepted();
+                listener.incrementClientCount();
+                register(handler);
+
+                // execute handler in thread pool
+                clientPool.execute(handler);
+
+            } catch (IOException e) {
+                if (isRunning.get()) {
+                    log.warn("Error accepting client: " + e.getMessage());
                 }
             }
+        }
+    }
 
-        } catch (IOException e) {
-            controller.logMessage("Failed to start server: " + e.getMessage());
-        } finally {
-            stopServer();
+    private void runNio() throws IOException {
+
+        // init setting, accept stays blocking on this thread, client channels go to the loops
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        listening.countDown();
+        eventLoops = new NioEventLoop[IO_THREADS];
+        clientPool = Executors.newFixedThreadPool(IO_THREADS);
+        for (int i = 0; i < IO_THREADS; i++) {
+            eventLoops[i] = new NioEventLoop(log);
+            clientPool.execute(eventLoops[i]);
+        }
+
+        log.debug("Server channel created successfully (" + IO_THREADS + " I/O threads)");
+        log.info("Waiting for client connections...");
+
+        int nextLoop = 0;
+        while (isRunning.get()) {
+            try {
+                SocketChannel clientChannel = serverChannel.accept();
+
+                // loop break
+                if (!isRunning.get()) {
+                    clientChannel.close();
+                    break;
+                }
+
+                if (clients.size() >= maxClients) {
+                    rejectFull(clientChannel.socket());
+                    continue;
+                }
+
+                clientChannel.configureBlocking(false);
+                clientChannel.socket().setTcpNoDelay(true);
+                clientChannel.socket().setKeepAlive(true);
+
+                // round robin over the loops
+                NioEventLoop loop = eventLoops[nextLoop];
+                nextLoop = (nextLoop + 1) % eventLoops.length;
+
+                NioClientHandler handler = new NioClientHandler(clientChannel, loop, this);
+                clients.add(handler);
+                metrics.accepted();
+                listener.incrementClientCount();
+                register(handler);
+                loop.register(handler);
+
+            } catch (IOException e) {
+                if (isRunning.get()) {
+                    log.warn("Error accepting client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void register(ClientSession session) {
+        if (reaper != null) {
+            reaper.register(session);
+        }
+    }
+
+    // admission control, tell the client why instead of just hanging up
+    private void rejectFull(Socket socket) throws IOException {
+        metrics.rejected.increment();
+        log.warn("Rejected " + socket.getRemoteSocketAddress() + ": server full (" + maxClients + " clients)");
+        try (socket) {
+            socket.getOutputStream().write(("SERVER: Server full, try again later\n").getBytes(StandardCharsets.UTF_8));
         }
     }
 
@@ -83,25 +291,123 @@ public class ChatServer implements Runnable {
             try {
                 serverSocket.close();
             } catch (IOException e) {
-                controller.logMessage("Error closing server socket: " + e.getMessage());
+                log.warn("Error closing server socket: " + e.getMessage());
+            }
+        }
+        if (serverChannel != null && serverChannel.isOpen()) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                log.warn("Error closing server channel: " + e.getMessage());
             }
         }
 
         // disconnect clients
-        for (ClientHandler client : clients) {
-            client.disconnect();
+        for (ClientSession client : clients) {
+            client.disconnect(DisconnectReason.SERVER_SHUTDOWN);
         }
         clients.clear();
+        fanout.stop();
+        roster.stop();
+        if (search != null) {
+            search.stop();
+        }
+        if (reaper != null) {
+            reaper.stop();
+        }
+        if (cluster != null) {
+            cluster.stop();
+        }
+
+        // stop the selector loops
+        if (eventLoops != null) {
+            for (NioEventLoop loop : eventLoops) {
+                if (loop != null) {
+                    loop.shutdown();
+                }
+            }
+        }
 
         // shutdown thread pool
         if (clientPool != null) {
             clientPool.shutdown();
         }
 
-        controller.logMessage("Server shutdown complete");
+        log.info("Server shutdown complete");
+    }
+
+    public CopyOnWriteArrayList<ClientSession> getClients() {
+        return clients;
+    }
+
+    public RoomRegistry getRooms() {
+        return rooms;
+    }
+
+    public RosterService getRoster() {
+        return roster;
+    }
+
+    // null when the journal is off
+    public SearchIndex getSearch() {
+        return search;
+    }
+
+    public SessionIndex getSessions() {
+        return sessions;
+    }
+
+    public BroadcastFanout getFanout() {
+        return fanout;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    public OutboundSettings getOutboundSettings() {
+        return outboundSettings;
+    }
+
+    public JournalSettings getJournalSettings() {
+        return journalSettings;
+    }
+
+    public ExecutorService getClientPool() {
+        return clientPool;
+    }
+
+    public ServerListener getListener() {
+        return listener;
+    }
+
+    public AsyncLog getLog() {
+        return log;
+    }
+
+    // for callers that start run() on a thread and want to connect right after
+    // false if it did not bind in time, or failed to (the log says why)
+    public boolean awaitListening(long timeoutMillis) throws InterruptedException {
+        return listening.await(timeoutMillis, TimeUnit.MILLISECONDS) && isRunning.get();
     }
 
     public boolean isRunning() {
         return isRunning.get();
     }
-}
\ No newline at end of file
+
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+}
@@ -0,0 +1,129 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.protocol.FrameType;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// wire format between nodes, separate from the client protocol
+// a link opens with int32 magic | int32 node id | int64 epoch (the node's start time, so a restart starts numbering over)
+// then batches: int32 length | int64 first origin sequence | uint16 count | count x message
+// message: type byte | uint8 room length | room | uint16 subject length | subject | int32 body length | body
+// origin sequences of one batch are consecutive, the receiver drops anything it already has from that node and epoch
+// and answers every batch with an int64 ack, the highest origin sequence it has; the sender resends anything unacked after a reconnect
+final class ClusterCodec {
+
+    static final int MAGIC = 0x4D434E31; // "MCN1"
+    static final int MAX_BATCH_BYTES = 4 * 1024 * 1024;
+    // senders stop adding to a batch past this, a single chat line is far below it
+    static final int TARGET_BATCH_BYTES = 256 * 1024;
+    static final int MAX_BATCH_MESSAGES = 1024;
+
+    // one forwarded broadcast, room bytes are shared by every peer's copy
+    record Forward(long originSequence, byte[] room, EncodedMessage message) {
+
+        int encodedLength() {
+            return 1 + 1 + room.length + 2 + message.subject().length + 4 + message.body().length;
+        }
+    }
+
+    // what a peer sent us, handed to the fan-out as is
+    record Received(long originSequence, String room, EncodedMessage message) {
+    }
+
+    interface ReceivedHandler {
+        void onMessage(Received received) throws IOException;
+    }
+
+    private ClusterCodec() {
+    }
+
+    static byte[] room(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // the whole batch in one array, written with a single call
+    static byte[] encodeBatch(List<Forward> batch) {
+        int length = 8 + 2;
+        for (Forward forward : batch) {
+            length += forward.encodedLength();
+        }
+        byte[] out = new byte[4 + length];
+        int offset = putInt(out, 0, length);
+        offset = putLong(out, offset, batch.get(0).originSequence());
+        out[offset++] = (byte) (batch.size() >>> 8);
+        out[offset++] = (byte) batch.size();
+        for (Forward forward : batch) {
+            EncodedMessage message = forward.message();
+            out[offset++] = message.type().code();
+            out[offset++] = (byte) forward.room().length;
+            offset = put(out, offset, forward.room());
+            byte[] subject = message.subject();
+            out[offset++] = (byte) (subject.length >>> 8);
+            out[offset++] = (byte) subject.length;
+            offset = put(out, offset, subject);
+            byte[] body = message.body();
+            offset = putInt(out, offset, body.length);
+            offset = put(out, offset, body);
+        }
+        return out;
+    }
+
+    // false on a clean end of stream between batches
+    static boolean readBatch(DataInputStream in, ReceivedHandler handler) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (length < 10 || length > MAX_BATCH_BYTES) {
+            throw new IOException("Invalid cluster batch length: " + length);
+        }
+        long first = in.readLong();
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            FrameType type = FrameType.fromCode(in.readByte());
+            if (type == null) {
+                throw new IOException("Unknown message type from peer");
+            }
+            byte[] room = readBytes(in, in.readUnsignedByte());
+            byte[] subject = readBytes(in, in.readUnsignedShort());
+            int bodyLength = in.readInt();
+            if (bodyLength < 0 || bodyLength > MAX_BATCH_BYTES) {
+                throw new IOException("Invalid body length from peer: " + bodyLength);
+            }
+            byte[] body = readBytes(in, bodyLength);
+            handler.onMessage(new Received(first + i, new String(room, StandardCharsets.UTF_8),
+                    EncodedMessage.of(type, subject, body)));
+        }
+        return true;
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static int put(byte[] target, int offset, byte[] source) {
+        System.arraycopy(source, 0, target, offset, source.length);
+        return offset + source.length;
+    }
+
+    private static int putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    private static int putLong(byte[] target, int offset, long value) {
+        offset = putInt(target, offset, (int) (value >>> 32));
+        return putInt(target, offset, (int) value);
+    }
+}
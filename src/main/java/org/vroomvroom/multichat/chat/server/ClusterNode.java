@@ -0,0 +1,211 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// relays broadcasts between the nodes of a static cluster, every node connects to every other one
+// a broadcast that started here goes to each peer once; one that came from a peer is delivered locally and never forwarded again,
+// so with a full mesh everybody gets it exactly once without routing tables
+// links retry on their own, a restarted node simply reconnects and numbers its broadcasts from a new epoch
+// whatever a peer sends is relayed as chat from anybody, so the cluster port only talks to the hosts in the peer list
+public class ClusterNode {
+
+    private static final int READ_BUFFER = 64 * 1024;
+
+    private final ClusterSettings settings;
+    private final AsyncLog log;
+    private final ServerMetrics metrics;
+    private final BroadcastFanout fanout;
+    // the node's start time, tells a peer that our sequences started over
+    private final long epoch = System.currentTimeMillis();
+    private final List<PeerLink> links = new ArrayList<>();
+    private final Map<Integer, Origin> origins = new ConcurrentHashMap<>();
+    private final List<Socket> inbound = new CopyOnWriteArrayList<>();
+    // fan-out thread only
+    private long originSequence = 0;
+    private volatile boolean running = true;
+    private ServerSocket serverSocket;
+
+    // highest origin sequence seen from one node in its current epoch
+    private static final class Origin {
+        long epoch;
+        long lastSequence;
+    }
+
+    public ClusterNode(ClusterSettings settings, BroadcastFanout fanout, AsyncLog log, ServerMetrics metrics) {
+        this.settings = settings;
+        this.fanout = fanout;
+        this.log = log;
+        this.metrics = metrics;
+        for (String peer : settings.peers()) {
+            links.add(new PeerLink(peer, settings.nodeId(), epoch, log, metrics));
+        }
+        metrics.registry().gauge("cluster.peers.up", this::getPeersUp);
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(settings.port()));
+        Thread.ofPlatform().daemon().name("cluster-accept").start(this::acceptLoop);
+        for (PeerLink link : links) {
+            link.start();
+        }
+        log.info("Cluster node " + settings.nodeId() + " listening on port " + settings.port() + ", peers " + settings.peers());
+    }
+
+    // fan-out thread, right after the local delivery; the same bytes go to every link
+    void forward(String roomName, EncodedMessage message) {
+        if (links.isEmpty()) {
+            return;
+        }
+        ClusterCodec.Forward forward = new ClusterCodec.Forward(++originSequence, ClusterCodec.room(roomName), message);
+        for (PeerLink link : links) {
+            link.offer(forward);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (!isPeer(socket.getInetAddress())) {
+                    log.warn("Refused cluster connection from " + socket.getRemoteSocketAddress() + ", not a configured peer");
+                    socket.close();
+                    continue;
+                }
+                Thread.ofVirtual().name("cluster-in-" + socket.getRemoteSocketAddress()).start(() -> readPeer(socket));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Cluster accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // looked up on every accept, peers are few and connect rarely, and a peer's address may have changed since start
+    private boolean isPeer(InetAddress address) {
+        for (String peer : settings.peers()) {
+            try {
+                for (InetAddress peerAddress : InetAddress.getAllByName(peer.substring(0, peer.lastIndexOf(':')))) {
+                    if (peerAddress.equals(address)) {
+                        return true;
+                    }
+                }
+            } catch (UnknownHostException e) {
+                // not resolvable right now, so not this one
+            }
+        }
+        return false;
+    }
+
+    private void readPeer(Socket socket) {
+        inbound.add(socket);
+        int nodeId = 0;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), READ_BUFFER));
+            if (in.readInt() != ClusterCodec.MAGIC) {
+                log.warn("Dropped cluster connection from " + socket.getRemoteSocketAddress() + ", not a chat node");
+                return;
+            }
+            nodeId = in.readInt();
+            long peerEpoch = in.readLong();
+            if (nodeId == settings.nodeId()) {
+                log.warn("Dropped cluster connection from " + socket.getRemoteSocketAddress() + ", it uses our node id");
+                return;
+            }
+            Origin origin = origins.computeIfAbsent(nodeId, id -> new Origin());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            log.info("Cluster node " + nodeId + " connected from " + socket.getRemoteSocketAddress());
+            while (running && ClusterCodec.readBatch(in, received -> accept(origin, peerEpoch, received))) {
+                out.writeLong(acked(origin, peerEpoch));
+            }
+        } catch (SocketException e) {
+            // closed by stop() or by the peer going away, its link reconnects on its own
+        } catch (IOException e) {
+            if (running) {
+                log.warn("Cluster connection from node " + nodeId + " failed: " + e.getMessage());
+            }
+        } finally {
+            inbound.remove(socket);
+        }
+    }
+
+    // a link resends its last batch after a reconnect, whatever part of it we already had is dropped here
+    private void accept(Origin origin, long peerEpoch, ClusterCodec.Received received) {
+        synchronized (origin) {
+            if (peerEpoch < origin.epoch) {
+                // a connection from before the peer restarted, still draining
+                metrics.clusterDuplicates.increment();
+                return;
+            }
+            if (peerEpoch > origin.epoch) {
+                origin.epoch = peerEpoch;
+                origin.lastSequence = 0;
+            }
+            if (received.originSequence() <= origin.lastSequence) {
+                metrics.clusterDuplicates.increment();
+                return;
+            }
+            origin.lastSequence = received.originSequence();
+        }
+        metrics.clusterReceived.increment();
+        fanout.publishFromPeer(received.room(), received.message());
+    }
+
+    private long acked(Origin origin, long peerEpoch) {
+        synchronized (origin) {
+            return origin.epoch == peerEpoch ? origin.lastSequence : 0;
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (PeerLink link : links) {
+            link.stop();
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                log.warn("Error closing cluster socket: " + e.getMessage());
+            }
+        }
+        for (Socket socket : inbound) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // stopping anyway
+            }
+        }
+    }
+
+    public int getNodeId() {
+        return settings.nodeId();
+    }
+
+    public int getPeersUp() {
+        int up = 0;
+        for (PeerLink link : links) {
+            if (link.isConnected()) {
+                up++;
+            }
+        }
+        return up;
+    }
+}
@@ -0,0 +1,39 @@
+package org.vroomvroom.multichat.chat.server;
+
+import java.util.Arrays;
+import java.util.List;
+
+// this node's place in a cluster: its id, the port other nodes connect to and the static list of the others ("host:port")
+// every node needs a different id and lists every other node, port 0 means no cluster
+public record ClusterSettings(int nodeId, int port, List<String> peers) {
+
+    public static final ClusterSettings DISABLED = new ClusterSettings(0, 0, List.of());
+
+    public ClusterSettings {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Cluster port must be between 0 and 65535");
+        }
+        if (port > 0 && nodeId < 1) {
+            throw new IllegalArgumentException("Node id must be at least 1 in a cluster");
+        }
+        peers = List.copyOf(peers);
+        for (String peer : peers) {
+            int colon = peer.lastIndexOf(':');
+            if (colon < 1 || !peer.substring(colon + 1).matches("\\d{1,5}")) {
+                throw new IllegalArgumentException("Invalid peer " + peer + ", expected host:port");
+            }
+        }
+    }
+
+    public boolean enabled() {
+        return port > 0;
+    }
+
+    // "localhost:9001, localhost:9002" as typed in the server tab or the properties file
+    public static List<String> parsePeers(String list) {
+        return Arrays.stream(list.split(","))
+                .map(String::trim)
+                .filter(peer -> !peer.isEmpty())
+                .toList();
+    }
+}
@@ -0,0 +1,28 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.protocol.CompressionCodec;
+
+// deflate for v4 clients that ask for it: bodies of at least thresholdBytes go out compressed, at level 1 (fast) to 9 (small)
+// chat lines are mostly short, the threshold keeps them off the compressor; 0 turns it off
+public record CompressionSettings(int thresholdBytes, int level) {
+
+    public static final CompressionSettings DEFAULT = new CompressionSettings(512, 6);
+    public static final CompressionSettings OFF = new CompressionSettings(0, 6);
+
+    public CompressionSettings {
+        if (thresholdBytes < 0) {
+            throw new IllegalArgumentException("Compression threshold cannot be negative");
+        }
+        if (level < 1 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9");
+        }
+    }
+
+    public boolean enabled() {
+        return thresholdBytes > 0;
+    }
+
+    CompressionCodec newCodec() {
+        return new CompressionCodec(thresholdBytes, level);
+    }
+}
@@ -0,0 +1,50 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.log.LogLevel;
+import org.vroomvroom.multichat.chat.log.TimestampFormat;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// headless stand-in for the server tab, log lines go to a stream (stdout by default)
+public class ConsoleServerListener implements ServerListener {
+
+    private final PrintStream out;
+    private final AtomicInteger connectedClients = new AtomicInteger(0);
+
+    public ConsoleServerListener() {
+        this(System.out);
+    }
+
+    public ConsoleServerListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void logMessage(String message) {
+        out.println(formatLine(System.currentTimeMillis(), message));
+    }
+
+    @Override
+    public void logMessage(long timestamp, LogLevel level, String message) {
+        out.println(formatLine(timestamp, LogLevel.WARN.includes(level) ? level + " " + message : message));
+    }
+
+    public static String formatLine(long timestamp, String message) {
+        return "[" + TimestampFormat.TIME.format(timestamp) + "] " + message;
+    }
+
+    @Override
+    public void incrementClientCount() {
+        connectedClients.incrementAndGet();
+    }
+
+    @Override
+    public void decrementClientCount() {
+        connectedClients.decrementAndGet();
+    }
+
+    public int getClientCount() {
+        return connectedClients.get();
+    }
+}
@@ -0,0 +1,23 @@
+package org.vroomvroom.multichat.chat.server;
+
+// why a session ended, counted in the server metrics and shown in the log
+public enum DisconnectReason {
+    CLIENT_CLOSED("connection closed"),
+    CLIENT_LEFT("left"),
+    IO_ERROR("I/O error"),
+    SLOW_CONSUMER("slow consumer"),
+    IDLE_TIMEOUT("idle timeout"),
+    RATE_LIMITED("rate limited"),
+    SERVER_SHUTDOWN("server shutdown");
+
+    private final String label;
+
+    DisconnectReason(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
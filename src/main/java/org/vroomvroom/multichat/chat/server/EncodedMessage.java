@@ -0,0 +1,239 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.protocol.CompressionCodec;
+import org.vroomvroom.multichat.chat.protocol.Frame;
+import org.vroomvroom.multichat.chat.protocol.FrameType;
+import org.vroomvroom.multichat.chat.protocol.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// a wire-ready message, encoded once per wire format and then shared by every recipient
+// text clients get the legacy line, binary clients the frame (v2 ones with the sequence in it); each is built
+// the first time somebody needs it (benign race, both threads would build the same bytes)
+// broadcasts get their sequence stamped by the fan-out thread before any recipient sees them, direct replies have none
+// the byte arrays never leave this package so nobody can scribble on them mid fan-out
+// compressing clients get the deflated frame, built once by compress() for the first of them and then shared like the rest
+public final class EncodedMessage {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] PRIVATE_PREFIX = "[private] ".getBytes(StandardCharsets.UTF_8);
+
+    private final FrameType type;
+    private final byte[] subject;
+    private final byte[] body;
+    // set instead of type/subject/body when a slow client's backlog got coalesced
+    private final EncodedMessage[] parts;
+    // fan-out thread, before the message is handed to any queue, the queue hand-off publishes it
+    private long sequence;
+    private volatile byte[] line;
+    private volatile byte[] frame;
+    private volatile byte[] sequencedFrame;
+    // null until compress() found it worth it
+    private volatile byte[] compressedFrame;
+    private volatile boolean compressionChecked;
+
+    private EncodedMessage(FrameType type, byte[] subject, byte[] body, EncodedMessage[] parts) {
+        this.type = type;
+        this.subject = subject;
+        this.body = body;
+        this.parts = parts;
+    }
+
+    // raw UTF-8 pieces, nothing gets decoded or re-encoded on the relay path
+    public static EncodedMessage of(FrameType type, byte[] subject, byte[] body) {
+        return new EncodedMessage(type, subject, body, null);
+    }
+
+    public static EncodedMessage chat(byte[] sender, byte[] text) {
+        return of(FrameType.CHAT, sender, text);
+    }
+
+    // only the recipient sees it, as "[private] <sender>: <text>" in either format
+    public static EncodedMessage direct(byte[] sender, byte[] text) {
+        byte[] subject = new byte[PRIVATE_PREFIX.length + sender.length];
+        System.arraycopy(PRIVATE_PREFIX, 0, subject, 0, PRIVATE_PREFIX.length);
+        System.arraycopy(sender, 0, subject, PRIVATE_PREFIX.length, sender.length);
+        return of(FrameType.CHAT, subject, text);
+    }
+
+    // the longest text a client may send: every copy we make of it (sequenced, compressed, as a direct message,
+    // or as a "name: text" line, which is shorter still) has to fit in one frame for every receiver
+    public static int maxTextLength(byte[] sender) {
+        return Frame.MAX_LENGTH - Frame.MAX_OVERHEAD - PRIVATE_PREFIX.length - sender.length;
+    }
+
+    public static EncodedMessage join(String clientName, String clientAddress) {
+        return of(FrameType.JOIN, utf8(clientName), utf8(clientAddress));
+    }
+
+    public static EncodedMessage leave(String clientName) {
+        return of(FrameType.LEAVE, utf8(clientName), EMPTY);
+    }
+
+    // no subject or body, one instance each is shared by every connection
+    public static final EncodedMessage PING = of(FrameType.PING, EMPTY, EMPTY);
+    public static final EncodedMessage PONG = of(FrameType.PONG, EMPTY, EMPTY);
+
+    public static EncodedMessage ack(String text) {
+        return of(FrameType.ACK, EMPTY, utf8(text));
+    }
+
+    // plain server line, shown as is in both formats
+    public static EncodedMessage ofLine(String text) {
+        return of(FrameType.SYSTEM, EMPTY, utf8(text));
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // one entry out of several queued messages, used when a slow client's backlog gets coalesced
+    public static EncodedMessage concat(List<EncodedMessage> messages) {
+        if (messages.size() == 1) {
+            return messages.get(0);
+        }
+        return new EncodedMessage(null, null, null, messages.toArray(new EncodedMessage[0]));
+    }
+
+    private byte[] bytes(WireFormat format) {
+        return switch (format) {
+            case LINE -> lineBytes();
+            case FRAME -> frameBytes();
+            case SEQUENCED_FRAME -> sequence > 0 ? sequencedFrameBytes() : frameBytes();
+            case COMPRESSED_FRAME -> parts != null ? join(WireFormat.COMPRESSED_FRAME)
+                    : compressedFrame != null ? compressedFrame : bytes(WireFormat.SEQUENCED_FRAME);
+        };
+    }
+
+    private byte[] lineBytes() {
+        byte[] result = line;
+        if (result == null) {
+            result = parts == null ? type.renderLine(subject, body) : join(WireFormat.LINE);
+            line = result;
+        }
+        return result;
+    }
+
+    private byte[] frameBytes() {
+        byte[] result = frame;
+        if (result == null) {
+            result = parts == null ? Frame.encode(type, subject, body) : join(WireFormat.FRAME);
+            frame = result;
+        }
+        return result;
+    }
+
+    private byte[] sequencedFrameBytes() {
+        byte[] result = sequencedFrame;
+        if (result == null) {
+            result = parts == null ? Frame.encode(type, sequence, subject, body) : join(WireFormat.SEQUENCED_FRAME);
+            sequencedFrame = result;
+        }
+        return result;
+    }
+
+    // before the message is queued for a compressing client, after the fan-out stamped it
+    // only the first call does anything, it returns the bytes the deflated frame saves (0 if it wasn't worth it)
+    public int compress(CompressionCodec codec) {
+        if (compressionChecked || parts != null || !codec.worthCompressing(body.length)) {
+            return 0;
+        }
+        int saved = 0;
+        byte[] deflated = codec.deflate(body);
+        // the compressed frame carries the 4 byte uncompressed length on top
+        if (deflated != null && deflated.length + 4 < body.length) {
+            compressedFrame = Frame.encodeCompressed(type, sequence, subject, body.length, deflated);
+            saved = body.length - deflated.length - 4;
+        }
+        compressionChecked = true;
+        return saved;
+    }
+
+    private byte[] join(WireFormat format) {
+        int total = 0;
+        for (EncodedMessage part : parts) {
+            total += part.bytes(format).length;
+        }
+        byte[] joined = new byte[total];
+        int offset = 0;
+        for (EncodedMessage part : parts) {
+            byte[] bytes = part.bytes(format);
+            System.arraycopy(bytes, 0, joined, offset, bytes.length);
+            offset += bytes.length;
+        }
+        return joined;
+    }
+
+    // cheap per-recipient view over the same bytes, no copy
+    public ByteBuffer buffer(WireFormat format) {
+        return ByteBuffer.wrap(bytes(format)).asReadOnlyBuffer();
+    }
+
+    public void writeTo(OutputStream out, WireFormat format) throws IOException {
+        out.write(bytes(format));
+    }
+
+    // size on the wire in one format, encodes it if nobody did yet
+    public int wireLength(WireFormat format) {
+        return bytes(format).length;
+    }
+
+    // into a writer's batch buffer, the caller checked it fits
+    public void copyTo(byte[] target, int offset, WireFormat format) {
+        byte[] bytes = bytes(format);
+        System.arraycopy(bytes, 0, target, offset, bytes.length);
+    }
+
+    // fan-out thread only, once per broadcast; a coalesced backlog keeps the sequences of its parts
+    void stamp(long sequence) {
+        if (parts == null) {
+            this.sequence = sequence;
+        }
+    }
+
+    // 0 for anything that was not broadcast
+    public long sequence() {
+        return sequence;
+    }
+
+    // payload size, good enough for queue accounting in either format
+    public int length() {
+        if (parts != null) {
+            int total = 0;
+            for (EncodedMessage part : parts) {
+                total += part.length();
+            }
+            return total;
+        }
+        return subject.length + body.length;
+    }
+
+    public FrameType type() {
+        return type;
+    }
+
+    // raw pieces for the journal, null for a coalesced backlog
+    byte[] subject() {
+        return subject;
+    }
+
+    byte[] body() {
+        return body;
+    }
+
+    // decoded line for logs, only built when somebody asks
+    public String text() {
+        byte[] bytes = lineBytes();
+        return new String(bytes, 0, Math.max(0, bytes.length - 1), StandardCharsets.UTF_8);
+    }
+
+    // the async log renders whatever it was handed with toString, on its own thread
+    @Override
+    public String toString() {
+        return text();
+    }
+}
@@ -0,0 +1,23 @@
+package org.vroomvroom.multichat.chat.server;
+
+// v3 binary clients that have been quiet for pingInterval get a PING, any session quiet for idleTimeout is closed
+// text clients can't answer a ping, after their handshake only TCP keepalive looks after them
+// 0 turns either off
+public record HeartbeatSettings(int pingIntervalSeconds, int idleTimeoutSeconds) {
+
+    public static final HeartbeatSettings DEFAULT = new HeartbeatSettings(15, 45);
+    public static final HeartbeatSettings DISABLED = new HeartbeatSettings(0, 0);
+
+    public HeartbeatSettings {
+        if (pingIntervalSeconds < 0 || idleTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("Ping interval and idle timeout cannot be negative");
+        }
+        if (pingIntervalSeconds > 0 && idleTimeoutSeconds > 0 && pingIntervalSeconds >= idleTimeoutSeconds) {
+            throw new IllegalArgumentException("Ping interval must be shorter than the idle timeout");
+        }
+    }
+
+    public boolean enabled() {
+        return pingIntervalSeconds > 0 || idleTimeoutSeconds > 0;
+    }
+}
@@ -0,0 +1,116 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// one thread and one timer wheel for every session's idle check, nothing scheduled per connection
+// reads only stamp the session's last activity, the wheel entry is checked (and moved on) when its slot comes up
+public class IdleReaper implements Runnable {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    // 128s per turn, longer deadlines go round again
+    private static final int WHEEL_SLOTS = 512;
+
+    private final HeartbeatSettings settings;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+    private final AsyncLog log;
+    private final ServerMetrics metrics;
+    // accept threads hand new sessions over, only the reaper thread touches the wheel
+    private final ConcurrentLinkedQueue<ClientSession> added = new ConcurrentLinkedQueue<>();
+    private final TimerWheel<ClientSession> wheel = new TimerWheel<>(TICK_NANOS, WHEEL_SLOTS, System.nanoTime());
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public IdleReaper(HeartbeatSettings settings, AsyncLog log, ServerMetrics metrics) {
+        this.settings = settings;
+        this.pingIntervalNanos = TimeUnit.SECONDS.toNanos(settings.pingIntervalSeconds());
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(settings.idleTimeoutSeconds());
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    public void start() {
+        thread = Thread.ofPlatform().daemon().name("idle-reaper").start(this);
+    }
+
+    public void register(ClientSession session) {
+        added.add(session);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            long now = System.nanoTime();
+            ClientSession session;
+            while ((session = added.poll()) != null) {
+                wheel.schedule(session, nextCheck(session.getLastActivityNanos()));
+            }
+            wheel.advance(now, this::check);
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(TICK_NANOS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    // the wheel's callback, decides between close, ping and another look later
+    private void check(ClientSession session) {
+        if (!session.isConnected()) {
+            // gone on its own, just falls out of the wheel
+            return;
+        }
+        long lastActivity = session.getLastActivityNanos();
+        long idle = System.nanoTime() - lastActivity;
+        boolean pingable = session.answersPings();
+        if (session.isHandshakeDone() && !pingable) {
+            // text client, silence is normal for them
+            return;
+        }
+
+        if (idleTimeoutNanos > 0 && idle >= idleTimeoutNanos) {
+            metrics.reaped.increment();
+            log.info("Reaped idle " + session.getClientName() + " (" + session.getClientAddress() + "), nothing heard for "
+                    + TimeUnit.NANOSECONDS.toSeconds(idle) + "s");
+            session.disconnect(DisconnectReason.IDLE_TIMEOUT);
+            return;
+        }
+        if (pingable && pingIntervalNanos > 0 && idle >= pingIntervalNanos) {
+            // again every interval until something comes back or the timeout hits
+            session.ping();
+            metrics.pingsSent.increment();
+            long nextPing = System.nanoTime() + pingIntervalNanos;
+            wheel.schedule(session, idleTimeoutNanos > 0 ? Math.min(nextPing, lastActivity + idleTimeoutNanos) : nextPing);
+            return;
+        }
+        wheel.schedule(session, nextCheck(lastActivity));
+    }
+
+    // first deadline that can still matter for a session last heard from at lastActivity
+    private long nextCheck(long lastActivity) {
+        long next = Long.MAX_VALUE;
+        if (pingIntervalNanos > 0) {
+            next = lastActivity + pingIntervalNanos;
+        }
+        if (idleTimeoutNanos > 0) {
+            next = Math.min(next, lastActivity + idleTimeoutNanos);
+        }
+        return next;
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public HeartbeatSettings getSettings() {
+        return settings;
+    }
+}
@@ -0,0 +1,34 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.protocol.FrameType;
+
+import java.nio.charset.StandardCharsets;
+
+// one journaled broadcast as it sits on disk:
+//   int32 length (of the rest) | int64 sequence | int64 timestamp | uint8 room length | room
+//   | type byte | uint16 subject length | subject | body
+// room is empty for server wide broadcasts
+public record JournalEntry(long sequence, long timestamp, String room, FrameType type, byte[] subject, byte[] body) {
+
+    static final int FIXED_LENGTH = 8 + 8 + 1 + 1 + 2;
+
+    // carries its original sequence, so a client that already has it can drop the replayed copy
+    public EncodedMessage toMessage() {
+        EncodedMessage message = EncodedMessage.of(type, subject, body);
+        message.stamp(sequence);
+        return message;
+    }
+
+    // server wide entries belong to every room
+    public boolean isVisibleIn(String roomName) {
+        return room.isEmpty() || room.equals(roomName);
+    }
+
+    byte[] roomBytes() {
+        return room.getBytes(StandardCharsets.UTF_8);
+    }
+
+    int recordLength() {
+        return 4 + FIXED_LENGTH + roomBytes().length + subject.length + body.length;
+    }
+}
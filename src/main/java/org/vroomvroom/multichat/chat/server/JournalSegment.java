@@ -0,0 +1,218 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.protocol.FrameType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+// one journal file, named after the first sequence it holds
+// only the journal writer thread appends; readers see bytes up to committedSize, which moves after fsync
+// reads go through a read-only mapping of the committed part, remapped when the segment has grown
+class JournalSegment {
+
+    // one sparse index entry every this many records
+    private static final int INDEX_INTERVAL = 64;
+
+    private record Mapping(MappedByteBuffer buffer, long size) {
+    }
+
+    private final Path path;
+    private final long baseSequence;
+    private final FileChannel channel;
+    // writer thread only
+    private long writtenSize;
+    private int recordCount = 0;
+    private volatile long committedSize;
+    private volatile long lastSequence;
+
+    // sparse index, pairs of (sequence, file position), grown by copying so readers never see a torn array
+    private volatile long[] index = new long[128];
+    private volatile int indexCount = 0;
+
+    // replaced, never modified, a reader that races a remap just maps again
+    private volatile Mapping mapping;
+
+    private JournalSegment(Path path, long baseSequence, FileChannel channel) {
+        this.path = path;
+        this.baseSequence = baseSequence;
+        this.channel = channel;
+        this.lastSequence = baseSequence - 1;
+    }
+
+    static Path fileFor(Path directory, long baseSequence) {
+        return directory.resolve(String.format("journal-%020d.log", baseSequence));
+    }
+
+    static JournalSegment create(Path directory, long baseSequence) throws IOException {
+        Path path = fileFor(directory, baseSequence);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new JournalSegment(path, baseSequence, channel);
+    }
+
+    // scans an existing file to rebuild the index, a torn record at the tail (crash mid write) is cut off
+    static JournalSegment recover(Path path, long baseSequence) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        JournalSegment segment = new JournalSegment(path, baseSequence, channel);
+
+        long fileSize = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(4 + 8);
+        while (position + header.capacity() <= fileSize) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, position + header.position()) > 0) {
+                // keep reading, a short read is fine
+            }
+            header.flip();
+            int length = header.getInt();
+            long sequence = header.getLong();
+            if (length < JournalEntry.FIXED_LENGTH || position + 4 + length > fileSize || sequence <= segment.lastSequence) {
+                break;
+            }
+            segment.indexRecord(sequence, position);
+            position += 4 + length;
+        }
+        if (position < fileSize) {
+            channel.truncate(position);
+            channel.force(false);
+        }
+        segment.writtenSize = position;
+        segment.committedSize = position;
+        return segment;
+    }
+
+    private void indexRecord(long sequence, long position) {
+        if (recordCount % INDEX_INTERVAL == 0) {
+            long[] current = index;
+            if (indexCount * 2 == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[indexCount * 2] = sequence;
+            current[indexCount * 2 + 1] = position;
+            index = current;
+            indexCount++;
+        }
+        recordCount++;
+        lastSequence = sequence;
+    }
+
+    // writer thread only, entries must be in sequence order; nothing is visible to readers before commit()
+    void append(List<JournalEntry> entries) throws IOException {
+        int total = 0;
+        for (JournalEntry entry : entries) {
+            total += entry.recordLength();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (JournalEntry entry : entries) {
+            indexRecord(entry.sequence(), writtenSize + buffer.position());
+            buffer.putInt(entry.recordLength() - 4);
+            buffer.putLong(entry.sequence());
+            buffer.putLong(entry.timestamp());
+            byte[] room = entry.roomBytes();
+            buffer.put((byte) room.length);
+            buffer.put(room);
+            buffer.put(entry.type().code());
+            buffer.putShort((short) entry.subject().length);
+            buffer.put(entry.subject());
+            buffer.put(entry.body());
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            writtenSize += channel.write(buffer, writtenSize);
+        }
+    }
+
+    // one fsync for everything appended since the last commit
+    void commit() throws IOException {
+        channel.force(false);
+        committedSize = writtenSize;
+    }
+
+    // committed entries with from <= sequence <= to, in order
+    void read(long from, long to, List<JournalEntry> out) throws IOException {
+        long end = committedSize;
+        if (end == 0 || to < baseSequence || from > lastSequence) {
+            return;
+        }
+        ByteBuffer view = view(end);
+        view.position((int) seek(from));
+        while (view.remaining() > 4 + 8) {
+            int length = view.getInt();
+            long sequence = view.getLong();
+            if (sequence > to) {
+                break;
+            }
+            if (sequence < from) {
+                view.position(view.position() + length - 8);
+                continue;
+            }
+            long timestamp = view.getLong();
+            byte[] room = new byte[view.get() & 0xff];
+            view.get(room);
+            FrameType type = FrameType.fromCode(view.get());
+            int subjectLength = view.getShort() & 0xffff;
+            byte[] subject = new byte[subjectLength];
+            view.get(subject);
+            byte[] body = new byte[length - JournalEntry.FIXED_LENGTH - room.length - subjectLength];
+            view.get(body);
+            if (type != null) {
+                out.add(new JournalEntry(sequence, timestamp, new String(room, StandardCharsets.UTF_8), type, subject, body));
+            }
+        }
+    }
+
+    // closest indexed position at or before the sequence
+    private long seek(long sequence) {
+        int count = indexCount;
+        long[] current = index;
+        int low = 0;
+        int high = Math.min(count, current.length / 2) - 1;
+        long position = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (current[mid * 2] <= sequence) {
+                position = current[mid * 2 + 1];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return position;
+    }
+
+    // private cursor over the mapped file, limited to what was committed when the read started
+    private ByteBuffer view(long size) throws IOException {
+        Mapping current = mapping;
+        if (current == null || current.size() < size) {
+            current = new Mapping(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), size);
+            mapping = current;
+        }
+        return current.buffer().duplicate().limit((int) size);
+    }
+
+    long writtenSize() {
+        return writtenSize;
+    }
+
+    long baseSequence() {
+        return baseSequence;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,16 @@
+package org.vroomvroom.multichat.chat.server;
+
+import java.nio.file.Path;
+
+// where the message journal lives and how much history a joining client gets
+public record JournalSettings(boolean enabled, Path directory, int replayCount) {
+
+    public static final JournalSettings DEFAULT = new JournalSettings(true, Path.of("journal"), 50);
+    public static final JournalSettings DISABLED = new JournalSettings(false, Path.of("journal"), 0);
+
+    public JournalSettings {
+        if (replayCount < 0) {
+            throw new IllegalArgumentException("Replay count cannot be negative");
+        }
+    }
+}
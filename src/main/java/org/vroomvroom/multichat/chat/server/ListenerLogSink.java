@@ -0,0 +1,19 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.log.LogLevel;
+import org.vroomvroom.multichat.chat.log.LogSink;
+
+// log lines to the server tab or the console, whatever listener the server was started with
+class ListenerLogSink implements LogSink {
+
+    private final ServerListener listener;
+
+    ListenerLogSink(ServerListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void write(long timestamp, LogLevel level, String message) {
+        listener.logMessage(timestamp, level, message);
+    }
+}
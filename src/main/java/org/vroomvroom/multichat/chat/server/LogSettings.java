@@ -0,0 +1,13 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.log.LogLevel;
+
+import java.nio.file.Path;
+
+// server log: lowest level kept and where it goes, the listener (server tab or console), rotating files, both or nowhere
+// DEBUG keeps the line for every relayed message, INFO drops just those
+public record LogSettings(LogLevel level, boolean toListener, boolean toFile, Path directory) {
+
+    public static final LogSettings DEFAULT = new LogSettings(LogLevel.DEBUG, true, false, Path.of("logs"));
+    public static final LogSettings OFF = new LogSettings(LogLevel.ERROR, false, false, Path.of("logs"));
+}
@@ -0,0 +1,244 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// append-only history of every broadcast, split into segment files
+// append() only numbers the message and queues it, a writer thread writes whatever piled up
+// in one go and fsyncs once for the whole batch (group commit), so the fan-out never waits on the disk
+// reads are served from memory-mapped segments and only ever see committed entries
+public class MessageJournal {
+
+    private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_BATCH = 4096;
+    // a room replay walks back at most this many entries looking for its own messages
+    private static final long MAX_REPLAY_SCAN = 1 << 20;
+
+    private final Path directory;
+    private final AsyncLog log;
+    // oldest first, the last one is the one being written
+    private final CopyOnWriteArrayList<JournalSegment> segments = new CopyOnWriteArrayList<>();
+    private final LinkedBlockingQueue<JournalEntry> pending = new LinkedBlockingQueue<>();
+    private final AtomicBoolean isRunning = new AtomicBoolean(true);
+    // last appended (fan-out thread only), the fan-out numbers broadcasts so sequence order is delivery order
+    private long lastAssigned;
+    private volatile long lastCommitted;
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition committed = commitLock.newCondition();
+    private Thread writerThread;
+    private volatile SearchIndex searchIndex;
+
+    private MessageJournal(Path directory, AsyncLog log) {
+        this.directory = directory;
+        this.log = log;
+    }
+
+    // picks up where the last run stopped, sequences keep counting across restarts
+    public static MessageJournal open(Path directory, AsyncLog log) throws IOException {
+        Files.createDirectories(directory);
+        MessageJournal journal = new MessageJournal(directory, log);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*.log")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long base = Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length()));
+            journal.segments.add(JournalSegment.recover(file, base));
+        }
+        if (journal.segments.isEmpty()) {
+            journal.segments.add(JournalSegment.create(directory, 1));
+        }
+
+        journal.lastAssigned = journal.segments.get(journal.segments.size() - 1).lastSequence();
+        journal.lastCommitted = journal.lastAssigned;
+
+        journal.writerThread = new Thread(journal::writeLoop, "journal-writer");
+        journal.writerThread.setDaemon(true);
+        journal.writerThread.start();
+        return journal;
+    }
+
+    // gets every batch once it is on disk, from the writer thread
+    void attachIndex(SearchIndex index) {
+        this.searchIndex = index;
+    }
+
+    // fan-out thread only, the message carries the sequence the fan-out stamped on it; room is empty for server wide broadcasts
+    public void append(String room, EncodedMessage message) {
+        if (!isRunning.get() || message.type() == null) {
+            return;
+        }
+        long sequence = message.sequence();
+        if (sequence <= lastAssigned) {
+            throw new IllegalArgumentException("Sequence " + sequence + " is not after " + lastAssigned);
+        }
+        lastAssigned = sequence;
+        pending.offer(new JournalEntry(sequence, System.currentTimeMillis(), room, message.type(), message.subject(), message.body()));
+    }
+
+    // last sequence appended, may not be on disk yet
+    public long lastSequence() {
+        return lastAssigned;
+    }
+
+    public long committedSequence() {
+        return lastCommitted;
+    }
+
+    private void writeLoop() {
+        List<JournalEntry> batch = new ArrayList<>();
+        try {
+            while (isRunning.get() || !pending.isEmpty()) {
+                JournalEntry first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // everything that queued up during the previous fsync rides along with this one
+                batch.add(first);
+                pending.drainTo(batch, MAX_BATCH - 1);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Journal write failed, history is no longer recorded: " + e.getMessage());
+            isRunning.set(false);
+            pending.clear();
+        } finally {
+            for (JournalSegment segment : segments) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    log.warn("Error closing journal segment " + segment.path() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void write(List<JournalEntry> batch) throws IOException {
+        JournalSegment active = segments.get(segments.size() - 1);
+        if (active.writtenSize() >= MAX_SEGMENT_BYTES) {
+            active = JournalSegment.create(directory, batch.get(0).sequence());
+            segments.add(active);
+        }
+        active.append(batch);
+        active.commit();
+
+        commitLock.lock();
+        try {
+            lastCommitted = batch.get(batch.size() - 1).sequence();
+            committed.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+        SearchIndex index = searchIndex;
+        if (index != null) {
+            index.committed(batch);
+        }
+    }
+
+    // false if the sequence did not make it to disk in time (or never will)
+    public boolean awaitCommitted(long sequence, long timeoutMillis) throws InterruptedException {
+        if (lastCommitted >= sequence) {
+            return true;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        commitLock.lock();
+        try {
+            while (lastCommitted < sequence && remaining > 0 && isRunning.get()) {
+                remaining = committed.awaitNanos(remaining);
+            }
+            return lastCommitted >= sequence;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    // the last count committed entries up to and including the given sequence
+    public List<JournalEntry> readLast(int count, long upTo) throws IOException {
+        return read(Math.max(1, upTo - count + 1), upTo);
+    }
+
+    // same, but only what was visible in one room; walks back in growing windows since rooms share the stream
+    public List<JournalEntry> readLast(String room, int count, long upTo) throws IOException {
+        List<List<JournalEntry>> chunks = new ArrayList<>();
+        int found = 0;
+        long window = count;
+        long to = upTo;
+        long scanned = 0;
+        while (found < count && to >= 1 && scanned < MAX_REPLAY_SCAN) {
+            long from = Math.max(1, to - window + 1);
+            List<JournalEntry> chunk = new ArrayList<>();
+            for (JournalEntry entry : read(from, to)) {
+                if (entry.isVisibleIn(room)) {
+                    chunk.add(entry);
+                }
+            }
+            chunks.add(chunk);
+            found += chunk.size();
+            scanned += to - from + 1;
+            to = from - 1;
+            window *= 2;
+        }
+
+        List<JournalEntry> entries = new ArrayList<>(found);
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            entries.addAll(chunks.get(i));
+        }
+        return entries.subList(Math.max(0, entries.size() - count), entries.size());
+    }
+
+    // everything after the given sequence, up to and including upTo
+    public List<JournalEntry> readSince(long after, long upTo) throws IOException {
+        return read(after + 1, upTo);
+    }
+
+    private List<JournalEntry> read(long from, long to) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        to = Math.min(to, lastCommitted);
+        for (JournalSegment segment : segments) {
+            if (segment.lastSequence() >= from && segment.baseSequence() <= to) {
+                segment.read(from, to, entries);
+            }
+        }
+        return entries;
+    }
+
+    // whatever is still queued gets written before the files are closed
+    public void close() {
+        if (!isRunning.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            writerThread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commitLock.lock();
+        try {
+            committed.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+}
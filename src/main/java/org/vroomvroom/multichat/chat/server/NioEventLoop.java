@@ -0,0 +1,151 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.NioClientHandler;
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// one selector thread serving many non-blocking client channels
+// anything touching the selector from outside goes through execute() so it runs on the loop thread
+public class NioEventLoop implements Runnable {
+
+    private final Selector selector;
+    private final AsyncLog log;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isRunning = new AtomicBoolean(true);
+    // loop thread only, paused reads waiting to resume; there are only ever a few
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(Comparator.comparingLong(Timer::dueNanos));
+
+    private record Timer(long dueNanos, Runnable task) {
+    }
+
+    public NioEventLoop(AsyncLog log) throws IOException {
+        this.selector = Selector.open();
+        this.log = log;
+    }
+
+    public void register(NioClientHandler handler) {
+        execute(() -> {
+            try {
+                handler.register(selector);
+            } catch (IOException e) {
+                log.warn("Error registering client " + handler.getClientAddress() + ": " + e.getMessage());
+                handler.disconnect(DisconnectReason.IO_ERROR);
+            }
+        });
+    }
+
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        selector.wakeup();
+    }
+
+    // loop thread only, runs task on the loop thread once delayNanos have passed
+    public void schedule(long delayNanos, Runnable task) {
+        timers.add(new Timer(System.nanoTime() + delayNanos, task));
+    }
+
+    // only shutdown() ends it, whatever goes wrong with one client or one task stays with that client or task;
+    // a dead loop would take every client on it along and keep getting new ones handed to it
+    @Override
+    public void run() {
+        try {
+            while (isRunning.get()) {
+                Timer next = timers.peek();
+                try {
+                    if (next == null) {
+                        selector.select();
+                    } else {
+                        // select(0) would mean forever
+                        selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.dueNanos() - System.nanoTime())));
+                    }
+                } catch (IOException e) {
+                    log.error("I/O loop select failed: " + e.getMessage());
+                    continue;
+                }
+                runTasks();
+                runTimers();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    NioClientHandler handler = (NioClientHandler) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            handler.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            handler.onWritable();
+                        }
+                    } catch (IOException e) {
+                        handler.onError(e);
+                    } catch (CancelledKeyException e) {
+                        // closed from another thread between isValid() and the handler touching the key
+                        handler.disconnect(DisconnectReason.IO_ERROR);
+                    } catch (RuntimeException e) {
+                        handler.onFailure(e);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            if (isRunning.get()) {
+                log.error("I/O loop failed: selector closed");
+            }
+        } finally {
+            closeSelector();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("I/O loop task failed: " + e);
+            }
+        }
+    }
+
+    private void runTimers() {
+        long now = System.nanoTime();
+        Timer timer;
+        while ((timer = timers.peek()) != null && timer.dueNanos() - now <= 0) {
+            timers.poll();
+            try {
+                timer.task().run();
+            } catch (RuntimeException e) {
+                log.error("I/O loop timer failed: " + e);
+            }
+        }
+    }
+
+    private void closeSelector() {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            ((NioClientHandler) key.attachment()).disconnect(DisconnectReason.SERVER_SHUTDOWN);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Error closing selector: " + e.getMessage());
+        }
+    }
+
+    public void shutdown() {
+        isRunning.set(false);
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,154 @@
+package org.vroomvroom.multichat.chat.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// bounded queue between the fan-out and one client's writer
+// producers never block here, a full queue is resolved by the slow consumer policy instead
+// there are several producers (fan-out, other clients' /msg, the roster timer, the idle reaper); with COALESCE they
+// take turns, otherwise one could slip a newer message in between draining the backlog and queueing its squashed copy
+public class OutboundQueue {
+
+    // a coalesced backlog is one write, but it still has to stay a sane size
+    private static final int MAX_COALESCED_BYTES = 256 * 1024;
+
+    private final ArrayBlockingQueue<EncodedMessage> queue;
+    private final OutboundSettings settings;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger overflows = new AtomicInteger();
+    // COALESCE only, the other policies never take it
+    private final ReentrantLock producerLock = new ReentrantLock();
+
+    OutboundQueue(OutboundSettings settings) {
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(settings.capacity());
+    }
+
+    // false means the policy gave up on this client and it should be disconnected
+    public boolean offer(EncodedMessage message) {
+        if (settings.policy() == SlowConsumerPolicy.COALESCE) {
+            offerCoalescing(message);
+            return true;
+        }
+        if (queue.offer(message)) {
+            return true;
+        }
+
+        switch (settings.policy()) {
+            case DROP_OLDEST -> dropOldestUntilAccepted(message);
+            case DISCONNECT -> {
+                dropped.incrementAndGet();
+                return overflows.incrementAndGet() < settings.disconnectThreshold();
+            }
+        }
+        return true;
+    }
+
+    // history replay, waits for room instead of applying the policy, false if there still is none
+    public boolean offer(EncodedMessage message, long timeoutMillis) throws InterruptedException {
+        return queue.offer(message, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // for messages dropped before they ever reached the queue
+    public void countDropped() {
+        dropped.incrementAndGet();
+    }
+
+    private void dropOldestUntilAccepted(EncodedMessage message) {
+        while (!queue.offer(message)) {
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void offerCoalescing(EncodedMessage message) {
+        producerLock.lock();
+        try {
+            if (!queue.offer(message)) {
+                coalesce(message);
+            }
+        } finally {
+            producerLock.unlock();
+        }
+    }
+
+    // squash the whole backlog plus the new message into one entry, oldest bytes go first if it gets too big
+    // producerLock held, only the writer can touch the queue meanwhile and all it does is make room
+    private void coalesce(EncodedMessage message) {
+        List<EncodedMessage> backlog = new ArrayList<>(queue.size() + 1);
+        queue.drainTo(backlog);
+        backlog.add(message);
+
+        int total = 0;
+        for (EncodedMessage m : backlog) {
+            total += m.length();
+        }
+        int first = 0;
+        while (total > MAX_COALESCED_BYTES && first < backlog.size() - 1) {
+            total -= backlog.get(first++).length();
+            dropped.incrementAndGet();
+        }
+
+        dropOldestUntilAccepted(EncodedMessage.concat(backlog.subList(first, backlog.size())));
+    }
+
+    public EncodedMessage poll() {
+        EncodedMessage message = queue.poll();
+        if (message == null) {
+            // caught up, the disconnect threshold starts over
+            overflows.set(0);
+        }
+        return message;
+    }
+
+    public EncodedMessage take() throws InterruptedException {
+        if (queue.isEmpty()) {
+            overflows.set(0);
+        }
+        return queue.take();
+    }
+
+    // blocking writers, waits for one message and takes up to max along, lingering up to the flush delay for more
+    public void takeBatch(List<EncodedMessage> batch, int max) throws InterruptedException {
+        batch.add(take());
+        queue.drainTo(batch, max - batch.size());
+        if (settings.flushDelayMillis() == 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.flushDelayMillis());
+        while (batch.size() < max) {
+            EncodedMessage next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, max - batch.size());
+        }
+    }
+
+    public int flushDelayMillis() {
+        return settings.flushDelayMillis();
+    }
+
+    public void clear() {
+        queue.clear();
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    public int capacity() {
+        return settings.capacity();
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,26 @@
+package org.vroomvroom.multichat.chat.server;
+
+// per-client outbound queue setup, same for every client of one server run
+// disconnectThreshold only matters for DISCONNECT: overflowed messages tolerated before we hang up
+// flushDelayMillis is how long a writer may hold the first queued message to gather more into the same write,
+// 0 writes as soon as it wakes up (it still takes everything already queued along)
+public record OutboundSettings(int capacity, SlowConsumerPolicy policy, int disconnectThreshold, int flushDelayMillis) {
+
+    public static final OutboundSettings DEFAULT = new OutboundSettings(256, SlowConsumerPolicy.DROP_OLDEST, 64, 0);
+
+    public OutboundSettings {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        if (disconnectThreshold < 1) {
+            throw new IllegalArgumentException("Disconnect threshold must be at least 1");
+        }
+        if (flushDelayMillis < 0 || flushDelayMillis > 1000) {
+            throw new IllegalArgumentException("Flush delay must be between 0 and 1000 ms");
+        }
+    }
+
+    public OutboundQueue newQueue() {
+        return new OutboundQueue(this);
+    }
+}
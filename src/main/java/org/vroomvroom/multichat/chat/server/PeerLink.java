@@ -0,0 +1,228 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.Backoff;
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// our half of the connection to one peer, broadcasts go out on it and only acks come back
+// (the peer's own link to us carries its broadcasts the other way)
+// everything stays in unacked until the peer confirmed it, a reconnect sends that again and the peer drops what it already had
+class PeerLink {
+
+    // queued for the peer plus sent but unconfirmed, each; a peer down long enough loses the oldest
+    private static final int CAPACITY = 16_384;
+    private static final int CONNECT_TIMEOUT_MS = 2_000;
+    // how often an idle sender looks whether the ack reader saw the connection die
+    private static final long IDLE_CHECK_MS = 1_000;
+
+    private final String address;
+    private final int nodeId;
+    private final long epoch;
+    private final AsyncLog log;
+    private final ServerMetrics metrics;
+    private final ArrayBlockingQueue<ClusterCodec.Forward> queue = new ArrayBlockingQueue<>(CAPACITY);
+    // guarded by itself, oldest first
+    private final ArrayDeque<ClusterCodec.Forward> unacked = new ArrayDeque<>();
+    private final Backoff backoff = new Backoff(250, 10_000);
+    private volatile boolean running = true;
+    private volatile boolean connected = false;
+    private volatile Socket socket;
+    private Thread thread;
+
+    PeerLink(String address, int nodeId, long epoch, AsyncLog log, ServerMetrics metrics) {
+        this.address = address;
+        this.nodeId = nodeId;
+        this.epoch = epoch;
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    void start() {
+        thread = Thread.ofPlatform().daemon().name("cluster-link-" + address).start(this::run);
+    }
+
+    // fan-out thread, never blocks
+    void offer(ClusterCodec.Forward forward) {
+        while (!queue.offer(forward)) {
+            if (queue.poll() != null) {
+                metrics.clusterDropped.increment();
+            }
+        }
+    }
+
+    private void run() {
+        List<ClusterCodec.Forward> batch = new ArrayList<>();
+        while (running) {
+            try (Socket s = connect()) {
+                DataOutputStream out = new DataOutputStream(s.getOutputStream());
+                out.writeInt(ClusterCodec.MAGIC);
+                out.writeInt(nodeId);
+                out.writeLong(epoch);
+                out.flush();
+                socket = s;
+                connected = true;
+                backoff.reset();
+                log.info("Cluster link to " + address + " up");
+                Thread.ofVirtual().name("cluster-acks-" + address).start(() -> readAcks(s));
+
+                write(s.getOutputStream(), unackedCopy());
+                while (running) {
+                    takeBatch(s, batch);
+                    if (!batch.isEmpty()) {
+                        remember(batch);
+                        write(s.getOutputStream(), batch);
+                        batch.clear();
+                    }
+                }
+            } catch (IOException e) {
+                down(socket, e.getMessage());
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                socket = null;
+                connected = false;
+            }
+            if (!pause()) {
+                break;
+            }
+        }
+    }
+
+    private Socket connect() throws IOException {
+        int colon = address.lastIndexOf(':');
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))), CONNECT_TIMEOUT_MS);
+            s.setTcpNoDelay(true);
+            return s;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    // whatever is queued right now up to the batch limits, waiting only for the first one
+    private void takeBatch(Socket s, List<ClusterCodec.Forward> batch) throws IOException, InterruptedException {
+        ClusterCodec.Forward first = queue.poll(IDLE_CHECK_MS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            if (s.isClosed()) {
+                throw new IOException("connection closed");
+            }
+            return;
+        }
+        batch.add(first);
+        int bytes = first.encodedLength();
+        ClusterCodec.Forward next;
+        while (batch.size() < ClusterCodec.MAX_BATCH_MESSAGES && bytes < ClusterCodec.TARGET_BATCH_BYTES
+                && (next = queue.poll()) != null) {
+            batch.add(next);
+            bytes += next.encodedLength();
+        }
+    }
+
+    // one write per run of consecutive sequences, a dropped message splits the batch
+    private void write(OutputStream out, List<ClusterCodec.Forward> forwards) throws IOException {
+        int from = 0;
+        while (from < forwards.size()) {
+            int to = from + 1;
+            int bytes = forwards.get(from).encodedLength();
+            while (to < forwards.size() && to - from < ClusterCodec.MAX_BATCH_MESSAGES && bytes < ClusterCodec.TARGET_BATCH_BYTES
+                    && forwards.get(to).originSequence() == forwards.get(to - 1).originSequence() + 1) {
+                bytes += forwards.get(to).encodedLength();
+                to++;
+            }
+            out.write(ClusterCodec.encodeBatch(forwards.subList(from, to)));
+            metrics.clusterForwarded.add(to - from);
+            metrics.clusterBatches.increment();
+            from = to;
+        }
+    }
+
+    private void remember(List<ClusterCodec.Forward> batch) {
+        synchronized (unacked) {
+            unacked.addAll(batch);
+            while (unacked.size() > CAPACITY) {
+                unacked.pollFirst();
+                metrics.clusterDropped.increment();
+            }
+        }
+    }
+
+    private List<ClusterCodec.Forward> unackedCopy() {
+        synchronized (unacked) {
+            return new ArrayList<>(unacked);
+        }
+    }
+
+    // also how we notice the peer going away, the sender itself would only find out on its next write
+    private void readAcks(Socket s) {
+        try {
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            while (true) {
+                long acked = in.readLong();
+                synchronized (unacked) {
+                    while (!unacked.isEmpty() && unacked.peekFirst().originSequence() <= acked) {
+                        unacked.pollFirst();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            down(s, e.getMessage());
+        }
+    }
+
+    // whichever side sees it first reports it, the sender reconnects
+    private synchronized void down(Socket s, String reason) {
+        if (s == null || s != socket || !connected) {
+            return;
+        }
+        connected = false;
+        if (running) {
+            log.warn("Cluster link to " + address + " down: " + reason);
+        }
+        try {
+            s.close();
+        } catch (IOException ignored) {
+            // already broken
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(backoff.nextDelayMillis());
+            return running;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    void stop() {
+        running = false;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // stopping anyway
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+}
@@ -0,0 +1,110 @@
+package org.vroomvroom.multichat.chat.server;
+
+import java.util.Arrays;
+
+// ascending doc numbers of one search term, compressed: blocks of BLOCK docs, each stored as varint gaps from the previous one
+// the first doc and byte offset of every block sit in two skip arrays, so a lookup jumps straight to its block and
+// decodes at most BLOCK gaps; a chat term usually costs one or two bytes per message it appears in
+// single writer (the indexer, under the index's write lock), cursors only under the read lock
+class PostingList {
+
+    static final int BLOCK = 128;
+
+    private byte[] data = new byte[16];
+    private int length = 0;
+    private int count = 0;
+    private int last = -1;
+    private int[] blockDocs = new int[1];
+    private int[] blockOffsets = new int[1];
+    private int blocks = 0;
+
+    // docs only ever grow, the same doc twice (a word repeated in one message) is stored once
+    void add(int doc) {
+        if (doc <= last) {
+            return;
+        }
+        if (count % BLOCK == 0) {
+            if (blocks == blockDocs.length) {
+                blockDocs = Arrays.copyOf(blockDocs, blocks * 2);
+                blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+            }
+            blockDocs[blocks] = doc;
+            blockOffsets[blocks] = length;
+            blocks++;
+        } else {
+            writeVarint(doc - last);
+        }
+        last = doc;
+        count++;
+    }
+
+    private void writeVarint(int value) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+        }
+        while ((value & ~0x7f) != 0) {
+            data[length++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long sizeBytes() {
+        return data.length + 8L * blockDocs.length;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    // walks the list from the newest doc down, each call may only ask for the same or an older doc than the last one
+    final class Cursor {
+
+        private final int[] decoded = new int[BLOCK];
+        private int block = blocks - 1;
+        private int decodedBlock = -1;
+        private int position = 0;
+
+        // largest doc <= target, -1 when there is none
+        int atMost(int target) {
+            while (block >= 0 && blockDocs[block] > target) {
+                block--;
+            }
+            if (block < 0) {
+                return -1;
+            }
+            if (decodedBlock != block) {
+                decode(block);
+            }
+            while (position > 0 && decoded[position] > target) {
+                position--;
+            }
+            return decoded[position];
+        }
+
+        private void decode(int b) {
+            int n = Math.min(BLOCK, count - b * BLOCK);
+            int offset = blockOffsets[b];
+            int doc = blockDocs[b];
+            decoded[0] = doc;
+            for (int i = 1; i < n; i++) {
+                int value = 0;
+                int shift = 0;
+                byte read;
+                do {
+                    read = data[offset++];
+                    value |= (read & 0x7f) << shift;
+                    shift += 7;
+                } while (read < 0);
+                doc += value;
+                decoded[i] = doc;
+            }
+            decodedBlock = b;
+            position = n - 1;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.vroomvroom.multichat.chat.server;
+
+// what happens to a client's message once it is over its (or the server's) rate limit
+public enum RateLimitPolicy {
+    // message still goes through, the client's reads pause until it is back under the limit (TCP pushes back)
+    DELAY("Delay reads"),
+    DROP("Drop message"),
+    DISCONNECT("Disconnect");
+
+    private final String label;
+
+    RateLimitPolicy(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
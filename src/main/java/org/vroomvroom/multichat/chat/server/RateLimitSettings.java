@@ -0,0 +1,28 @@
+package org.vroomvroom.multichat.chat.server;
+
+// chat messages (and commands) a client may send per second, and how many it may send at once after being quiet
+// the global limit is shared by all clients together, 0 turns either limit off
+public record RateLimitSettings(int perClientRate, int perClientBurst, int globalRate, int globalBurst, RateLimitPolicy policy) {
+
+    public static final RateLimitSettings DEFAULT = new RateLimitSettings(20, 40, 0, 0, RateLimitPolicy.DELAY);
+    // TokenBucket works in whole nanos per token, anything faster would round down to no limit at all
+    public static final int MAX_RATE = 1_000_000_000;
+
+    public static final RateLimitSettings OFF = new RateLimitSettings(0, 0, 0, 0, RateLimitPolicy.DELAY);
+
+    public RateLimitSettings {
+        if (perClientRate < 0 || globalRate < 0) {
+            throw new IllegalArgumentException("Rate limits cannot be negative");
+        }
+        if (perClientRate > MAX_RATE || globalRate > MAX_RATE) {
+            throw new IllegalArgumentException("Rate limits cannot be above " + MAX_RATE + " per second");
+        }
+        if ((perClientRate > 0 && perClientBurst < 1) || (globalRate > 0 && globalBurst < 1)) {
+            throw new IllegalArgumentException("Burst must be at least 1 when a rate limit is set");
+        }
+    }
+
+    public boolean enabled() {
+        return perClientRate > 0 || globalRate > 0;
+    }
+}
@@ -0,0 +1,45 @@
+package org.vroomvroom.multichat.chat.server;
+
+// per-client buckets plus the shared global one, read threads call in for every message they get
+public class RateLimiter {
+
+    private final RateLimitSettings settings;
+    // null when there is no global limit
+    private final TokenBucket global;
+
+    public RateLimiter(RateLimitSettings settings) {
+        this.settings = settings;
+        this.global = settings.globalRate() > 0 ? new TokenBucket(settings.globalRate(), settings.globalBurst()) : null;
+    }
+
+    // null when there is no per-client limit
+    public TokenBucket newClientBucket() {
+        return settings.perClientRate() > 0 ? new TokenBucket(settings.perClientRate(), settings.perClientBurst()) : null;
+    }
+
+    // 0 when the message is within both limits, otherwise nanos it is over by
+    // DELAY always takes the tokens (the caller waits instead), the others take none from either bucket for a rejected message
+    public long acquire(TokenBucket client) {
+        long now = System.nanoTime();
+        if (settings.policy() == RateLimitPolicy.DELAY) {
+            long wait = client != null ? client.reserve(now) : 0;
+            return global != null ? Math.max(wait, global.reserve(now)) : wait;
+        }
+        if (client != null) {
+            long wait = client.tryAcquire(now);
+            if (wait > 0) {
+                return wait;
+            }
+        }
+        long wait = global != null ? global.tryAcquire(now) : 0;
+        if (wait > 0 && client != null) {
+            // the message is dropped anyway, it should not cost the client its token
+            client.refund();
+        }
+        return wait;
+    }
+
+    public RateLimitSettings getSettings() {
+        return settings;
+    }
+}
@@ -0,0 +1,58 @@
+package org.vroomvroom.multichat.chat.server;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// every room by name, everybody starts in the lobby
+// rooms are created on first join and dropped again when the last member leaves (the lobby stays)
+public class RoomRegistry {
+
+    public static final String LOBBY = "lobby";
+
+    private static final Pattern VALID_NAME = Pattern.compile("[a-z0-9_-]{1,32}");
+
+    private final ConcurrentHashMap<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    private final ChatRoom lobby;
+
+    public RoomRegistry() {
+        lobby = new ChatRoom(LOBBY);
+        rooms.put(LOBBY, lobby);
+    }
+
+    // null if the name is not usable, names are case insensitive and an optional '#' is ignored
+    public static String normalize(String name) {
+        if (name == null) {
+            return null;
+        }
+        String normalized = name.trim().toLowerCase(Locale.ROOT);
+        if (normalized.startsWith("#")) {
+            normalized = normalized.substring(1);
+        }
+        return VALID_NAME.matcher(normalized).matches() ? normalized : null;
+    }
+
+    // fan-out thread only, like every membership change
+    ChatRoom getOrCreate(String name) {
+        return rooms.computeIfAbsent(name, ChatRoom::new);
+    }
+
+    void removeIfEmpty(ChatRoom room) {
+        if (room != lobby && room.getMemberCount() == 0) {
+            rooms.remove(room.getName(), room);
+        }
+    }
+
+    public ChatRoom lobby() {
+        return lobby;
+    }
+
+    public ChatRoom get(String name) {
+        return rooms.get(name);
+    }
+
+    public Collection<ChatRoom> all() {
+        return rooms.values();
+    }
+}
@@ -0,0 +1,182 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+import org.vroomvroom.multichat.chat.protocol.Frame;
+import org.vroomvroom.multichat.chat.protocol.FrameType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// who is online and in which room, for v5 clients
+// a client gets the whole roster once when it is admitted, after that only what changed: joins, leaves and room moves
+// are collected for WINDOW_MS and go out as one delta, encoded once for every subscriber; somebody who came and went
+// within the window never shows up at all, so a mass reconnect is a handful of deltas instead of one broadcast per client
+// events come from the fan-out thread, flushes from our own timer; the lock keeps a snapshot and the deltas after it in step
+public class RosterService {
+
+    static final long WINDOW_MS = 250;
+    static final String SNAPSHOT = "snapshot";
+    static final String DELTA = "delta";
+    // well under a frame, a big roster goes out as a snapshot followed by deltas
+    private static final int MAX_BODY = Frame.MAX_LENGTH - 1024;
+
+    private final AsyncLog log;
+    private final ServerMetrics metrics;
+    private final ReentrantLock lock = new ReentrantLock();
+    // name -> room as the subscribers know it
+    private final Map<String, String> published = new HashMap<>();
+    // name -> room (null = gone) since the last flush, in the order it happened
+    private final Map<String, String> pending = new LinkedHashMap<>();
+    // which session a name belongs to, a replaced session leaving must not take its successor with it
+    private final Map<String, ClientSession> holders = new HashMap<>();
+    private final Set<ClientSession> subscribers = new LinkedHashSet<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "roster");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean flushScheduled = false;
+
+    public RosterService(AsyncLog log, ServerMetrics metrics) {
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    // fan-out thread, admission and every room move after it
+    void moved(ClientSession session, String room) {
+        lock.lock();
+        try {
+            holders.put(session.getClientName(), session);
+            change(session.getClientName(), room);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // fan-out thread, a session that had been admitted left
+    void left(ClientSession session) {
+        lock.lock();
+        try {
+            subscribers.remove(session);
+            if (holders.remove(session.getClientName(), session)) {
+                change(session.getClientName(), null);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // fan-out thread, right after admission: the snapshot goes straight into the session's queue, deltas follow it
+    void subscribe(ClientSession session) {
+        if (!session.speaksRoster()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (!session.isConnected()) {
+                return;
+            }
+            subscribers.add(session);
+            String kind = SNAPSHOT;
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            for (Map.Entry<String, String> entry : published.entrySet()) {
+                if (body.size() > MAX_BODY) {
+                    session.send(EncodedMessage.of(FrameType.ROSTER, utf8(kind), body.toByteArray()));
+                    kind = DELTA;
+                    body.reset();
+                }
+                appendEntry(body, entry.getKey(), entry.getValue());
+            }
+            session.send(EncodedMessage.of(FrameType.ROSTER, utf8(kind), body.toByteArray()));
+            metrics.rosterSnapshots.increment();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // lock held
+    private void change(String name, String room) {
+        pending.put(name, room);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            timer.schedule(this::flush, WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // timer thread, whatever is still different from what the subscribers know becomes one delta (more for huge bursts)
+    private void flush() {
+        lock.lock();
+        try {
+            flushScheduled = false;
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                String name = entry.getKey();
+                String room = entry.getValue();
+                if (Objects.equals(published.get(name), room)) {
+                    continue;
+                }
+                if (room == null) {
+                    published.remove(name);
+                } else {
+                    published.put(name, room);
+                }
+                if (body.size() > MAX_BODY) {
+                    publish(body.toByteArray());
+                    body.reset();
+                }
+                appendEntry(body, name, room);
+            }
+            pending.clear();
+            if (body.size() > 0) {
+                publish(body.toByteArray());
+            }
+        } catch (RuntimeException e) {
+            log.error("Roster flush failed: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // lock held, same bytes for everybody
+    private void publish(byte[] body) {
+        EncodedMessage delta = EncodedMessage.of(FrameType.ROSTER, utf8(DELTA), body);
+        for (ClientSession subscriber : subscribers) {
+            subscriber.send(delta);
+        }
+        metrics.rosterDeltas.increment();
+    }
+
+    // "+<room>\t<name>" for here (or moved), "-\t<name>" for gone, one per line
+    private static void appendEntry(ByteArrayOutputStream body, String name, String room) {
+        byte[] line = ((room == null ? "-" : "+" + room) + "\t" + name + "\n").getBytes(StandardCharsets.UTF_8);
+        body.write(line, 0, line.length);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return published.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void stop() {
+        timer.shutdownNow();
+    }
+}
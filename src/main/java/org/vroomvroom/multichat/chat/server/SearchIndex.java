@@ -0,0 +1,323 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.log.AsyncLog;
+import org.vroomvroom.multichat.chat.protocol.FrameType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// full text index over the chat history, word -> posting list of the messages it appears in
+// messages are numbered in the order they were journaled (doc numbers, dense, so the gaps stay tiny), the journal
+// sequence and time of every doc sit in two flat arrays; sender and room are terms too ("@name", "#room"),
+// the tokenizer never keeps those characters so they can't clash with words
+// fed by the journal writer with every committed batch, on startup it first reads the whole journal back
+// the index only holds numbers, the text of a hit is read back from the journal
+public class SearchIndex {
+
+    static final int MAX_RESULTS = 10;
+    private static final int MIN_TOKEN = 2;
+    private static final int MAX_TOKEN = 40;
+    private static final int REBUILD_CHUNK = 16_384;
+    private static final int SNIPPET_LENGTH = 120;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    private final MessageJournal journal;
+    private final AsyncLog log;
+    private final ServerMetrics metrics;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> terms = new HashMap<>();
+    private long[] sequences = new long[1024];
+    // seconds since the first indexed message, half the memory of millis and good for 68 years
+    private int[] times = new int[1024];
+    private long timeBase = -1;
+    private volatile int docs = 0;
+    // indexer thread only
+    private long lastIndexed = 0;
+    private final LinkedBlockingQueue<List<JournalEntry>> committed = new LinkedBlockingQueue<>();
+    private volatile boolean rebuilding = true;
+    private volatile boolean running = true;
+    // a query never runs on a reader or an event loop thread
+    private final ExecutorService queries = Executors.newVirtualThreadPerTaskExecutor();
+    private Thread indexer;
+
+    SearchIndex(MessageJournal journal, AsyncLog log, ServerMetrics metrics) {
+        this.journal = journal;
+        this.log = log;
+        this.metrics = metrics;
+        metrics.registry().gauge("search.indexed", () -> docs);
+    }
+
+    void start() {
+        indexer = new Thread(this::indexLoop, "search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    void stop() {
+        running = false;
+        if (indexer != null) {
+            indexer.interrupt();
+        }
+        queries.shutdownNow();
+    }
+
+    // journal writer thread, right after the batch hit the disk; the batch list is reused, so we keep a copy
+    void committed(List<JournalEntry> batch) {
+        if (running) {
+            committed.offer(List.copyOf(batch));
+        }
+    }
+
+    // whatever the journal had at startup first, then live batches; anything both saw is skipped by sequence
+    private void indexLoop() {
+        try {
+            rebuild();
+            while (running) {
+                add(committed.take());
+            }
+        } catch (InterruptedException e) {
+            // stopping
+        } catch (IOException | RuntimeException e) {
+            log.error("Search index stopped, /search only sees what was indexed so far: " + e.getMessage());
+        } finally {
+            rebuilding = false;
+        }
+    }
+
+    private void rebuild() throws IOException {
+        long start = System.nanoTime();
+        long upTo = journal.committedSequence();
+        for (long after = 0; after < upTo && running; after += REBUILD_CHUNK) {
+            add(journal.readSince(after, Math.min(upTo, after + REBUILD_CHUNK)));
+        }
+        rebuilding = false;
+        int termCount;
+        lock.readLock().lock();
+        try {
+            termCount = terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+        log.info("Search index rebuilt from the journal: " + docs + " messages, " + termCount + " terms in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // tokenizing happens outside the lock, queries only wait for the posting appends
+    private void add(List<JournalEntry> entries) {
+        List<JournalEntry> chats = new ArrayList<>(entries.size());
+        List<List<String>> tokens = new ArrayList<>(entries.size());
+        for (JournalEntry entry : entries) {
+            if (entry.sequence() <= lastIndexed) {
+                continue;
+            }
+            lastIndexed = entry.sequence();
+            if (entry.type() != FrameType.CHAT) {
+                continue;
+            }
+            List<String> words = tokenize(new String(entry.body(), StandardCharsets.UTF_8));
+            words.add("@" + new String(entry.subject(), StandardCharsets.UTF_8).toLowerCase(Locale.ROOT));
+            if (!entry.room().isEmpty()) {
+                words.add("#" + entry.room());
+            }
+            chats.add(entry);
+            tokens.add(words);
+        }
+        if (chats.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < chats.size(); i++) {
+                JournalEntry entry = chats.get(i);
+                int doc = docs;
+                if (doc == sequences.length) {
+                    sequences = Arrays.copyOf(sequences, doc * 2);
+                    times = Arrays.copyOf(times, doc * 2);
+                }
+                if (timeBase < 0) {
+                    timeBase = entry.timestamp() / 1000;
+                }
+                sequences[doc] = entry.sequence();
+                // clocks step back now and then, keeping times sorted is what lets a time filter binary search
+                int time = (int) (entry.timestamp() / 1000 - timeBase);
+                times[doc] = doc > 0 ? Math.max(time, times[doc - 1]) : time;
+                for (String term : tokens.get(i)) {
+                    terms.computeIfAbsent(term, t -> new PostingList()).add(doc);
+                }
+                docs = doc + 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // lowercase runs of letters and digits, the same for messages and queries; one letter words say nothing
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0, n = text.length(); i <= n; ) {
+            int c = i < n ? text.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.appendCodePoint(Character.toLowerCase(c));
+            } else if (!token.isEmpty()) {
+                if (token.length() >= MIN_TOKEN && token.length() <= MAX_TOKEN) {
+                    tokens.add(token.toString());
+                }
+                token.setLength(0);
+            }
+            i += i < n ? Character.charCount(c) : 1;
+        }
+        return tokens;
+    }
+
+    // answers on its own thread, the session just gets the lines
+    public void search(ClientSession session, String text) {
+        try {
+            queries.execute(() -> answer(session, text));
+        } catch (RuntimeException e) {
+            // shutting down
+        }
+    }
+
+    private void answer(ClientSession session, String text) {
+        SearchQuery query;
+        try {
+            query = SearchQuery.parse(text, System.currentTimeMillis());
+        } catch (IllegalArgumentException e) {
+            session.sendMessage("SERVER: Usage: /search <words> [from:<name>] [in:<room>] [since:12h] [after:/before:<yyyy-mm-dd>], "
+                    + e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        long[] hits = find(query, MAX_RESULTS + 1);
+        int shown = Math.min(hits.length, MAX_RESULTS);
+        List<JournalEntry> entries = new ArrayList<>(shown);
+        try {
+            for (int i = 0; i < shown; i++) {
+                entries.addAll(journal.readSince(hits[i] - 1, hits[i]));
+            }
+        } catch (IOException e) {
+            session.sendMessage("SERVER: Search failed, could not read the history: " + e.getMessage());
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        metrics.searchQueries.increment();
+        metrics.searchTime.record(elapsed);
+
+        String took = String.format(Locale.ROOT, "%.2f ms", elapsed / 1e6);
+        StringBuilder header = new StringBuilder("SERVER: ");
+        if (entries.isEmpty()) {
+            header.append("No matches for \"").append(text.trim()).append("\" (").append(took).append(")");
+        } else {
+            header.append(hits.length > MAX_RESULTS ? "Newest " + shown + " matches" : shown + (shown == 1 ? " match" : " matches"))
+                    .append(" for \"").append(text.trim()).append("\" (").append(took).append(")");
+        }
+        if (rebuilding) {
+            header.append(", still reading the history, older messages may be missing");
+        }
+        session.sendMessage(header.toString());
+        for (JournalEntry entry : entries) {
+            String body = new String(entry.body(), StandardCharsets.UTF_8);
+            if (body.length() > SNIPPET_LENGTH) {
+                body = body.substring(0, SNIPPET_LENGTH) + "...";
+            }
+            session.sendMessage("SERVER:   " + TIME.format(Instant.ofEpochMilli(entry.timestamp()))
+                    + (entry.room().isEmpty() ? "" : " #" + entry.room()) + " "
+                    + new String(entry.subject(), StandardCharsets.UTF_8) + ": " + body);
+        }
+    }
+
+    // journal sequences of the newest matches, newest first
+    // the rarest list drives, the others only get asked "anything at or below this doc" (leapfrog), each cursor
+    // only ever moves down so a query touches every block at most once
+    long[] find(SearchQuery query, int limit) {
+        List<String> wanted = new ArrayList<>(query.words());
+        if (query.sender() != null) {
+            wanted.add("@" + query.sender());
+        }
+        if (query.room() != null) {
+            wanted.add("#" + query.room());
+        }
+
+        lock.readLock().lock();
+        try {
+            List<PostingList> lists = new ArrayList<>(wanted.size());
+            for (String term : wanted) {
+                PostingList list = terms.get(term);
+                if (list == null) {
+                    return new long[0];
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(PostingList::count));
+            PostingList.Cursor[] cursors = new PostingList.Cursor[lists.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = lists.get(i).cursor();
+            }
+
+            int lowest = query.after() == Long.MIN_VALUE ? 0 : firstDocAtOrAfter(query.after());
+            int target = (query.before() == Long.MAX_VALUE ? docs : firstDocAtOrAfter(query.before())) - 1;
+            long[] hits = new long[limit];
+            int found = 0;
+            while (found < limit && target >= lowest) {
+                int doc = cursors[0].atMost(target);
+                if (doc < lowest) {
+                    break;
+                }
+                int next = doc;
+                for (int i = 1; i < cursors.length && next == doc; i++) {
+                    next = cursors[i].atMost(doc);
+                }
+                if (next == doc) {
+                    hits[found++] = sequences[doc];
+                    target = doc - 1;
+                } else {
+                    target = next;
+                }
+            }
+            return Arrays.copyOf(hits, found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // read lock held; times never go down, so a binary search finds where a time filter starts
+    private int firstDocAtOrAfter(long millis) {
+        if (timeBase < 0) {
+            return 0;
+        }
+        long seconds = Math.floorDiv(millis, 1000) - timeBase;
+        int low = 0;
+        int high = docs;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < seconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int size() {
+        return docs;
+    }
+}
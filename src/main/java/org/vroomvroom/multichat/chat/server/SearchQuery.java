@@ -0,0 +1,68 @@
+package org.vroomvroom.multichat.chat.server;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// what /search was asked for: words that must all appear, plus optional filters
+//   from:<name>  in:<room>  since:<n>m|h|d  after:<yyyy-mm-dd>  before:<yyyy-mm-dd>
+// times are epoch millis, after inclusive and before exclusive; a bad filter throws IllegalArgumentException with what to fix
+record SearchQuery(List<String> words, String sender, String room, long after, long before) {
+
+    static SearchQuery parse(String text, long now) {
+        List<String> words = new ArrayList<>();
+        String sender = null;
+        String room = null;
+        long after = Long.MIN_VALUE;
+        long before = Long.MAX_VALUE;
+        for (String part : text.trim().split("\\s+")) {
+            int colon = part.indexOf(':');
+            String key = colon > 0 ? part.substring(0, colon).toLowerCase(Locale.ROOT) : "";
+            String value = colon > 0 ? part.substring(colon + 1) : part;
+            switch (key) {
+                case "from" -> sender = value.toLowerCase(Locale.ROOT);
+                case "in" -> room = (value.startsWith("#") ? value.substring(1) : value).toLowerCase(Locale.ROOT);
+                case "since" -> after = Math.max(after, now - parseAge(value));
+                case "after" -> after = Math.max(after, parseDay(value));
+                // the whole day of before: is excluded, so before:today means up to yesterday
+                case "before" -> before = Math.min(before, parseDay(value));
+                default -> words.addAll(SearchIndex.tokenize(part));
+            }
+        }
+        if (words.isEmpty() && (sender == null || sender.isEmpty()) && (room == null || room.isEmpty())) {
+            throw new IllegalArgumentException("give it at least one word, from:<name> or in:<room>");
+        }
+        return new SearchQuery(List.copyOf(words), sender, room, after, before);
+    }
+
+    private static long parseAge(String value) {
+        if (value.length() >= 2) {
+            long unit = switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+                case 'm' -> 60_000L;
+                case 'h' -> 3_600_000L;
+                case 'd' -> 86_400_000L;
+                default -> 0;
+            };
+            try {
+                long amount = Long.parseLong(value.substring(0, value.length() - 1));
+                if (unit > 0 && amount >= 0 && amount < 100_000) {
+                    return amount * unit;
+                }
+            } catch (NumberFormatException e) {
+                // falls through to the complaint
+            }
+        }
+        throw new IllegalArgumentException("since: takes an age like 30m, 12h or 7d, not " + value);
+    }
+
+    private static long parseDay(String value) {
+        try {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("dates look like 2024-05-31, not " + value);
+        }
+    }
+}
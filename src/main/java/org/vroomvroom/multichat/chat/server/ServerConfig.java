@@ -0,0 +1,133 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.log.LogLevel;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+// everything ChatServer needs to start, built by the server tab or by the headless launcher
+public record ServerConfig(int port, int maxClients, TransportMode transportMode,
+                           OutboundSettings outbound, JournalSettings journal, LogSettings log,
+                           HeartbeatSettings heartbeat, RateLimitSettings rateLimit, ClusterSettings cluster,
+                           CompressionSettings compression) {
+
+    public static final ServerConfig DEFAULT = new ServerConfig(8080, 10, TransportMode.BLOCKING,
+            OutboundSettings.DEFAULT, JournalSettings.DEFAULT, LogSettings.DEFAULT, HeartbeatSettings.DEFAULT,
+            RateLimitSettings.DEFAULT, ClusterSettings.DISABLED, CompressionSettings.DEFAULT);
+
+    public ServerConfig {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Port must be between 0 and 65535");
+        }
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("Max clients must be at least 1");
+        }
+        if (cluster.enabled() && cluster.port() == port) {
+            throw new IllegalArgumentException("Cluster port must differ from the client port");
+        }
+    }
+
+    // copies with one thing changed, for code that starts from DEFAULT instead of spelling out every setting
+    public ServerConfig withPort(int port) {
+        return new ServerConfig(port, maxClients, transportMode, outbound, journal, log, heartbeat, rateLimit, cluster, compression);
+    }
+
+    public ServerConfig withMaxClients(int maxClients) {
+        return new ServerConfig(port, maxClients, transportMode, outbound, journal, log, heartbeat, rateLimit, cluster, compression);
+    }
+
+    public ServerConfig withTransportMode(TransportMode transportMode) {
+        return new ServerConfig(port, maxClients, transportMode, outbound, journal, log, heartbeat, rateLimit, cluster, compression);
+    }
+
+    public ServerConfig withJournal(JournalSettings journal) {
+        return new ServerConfig(port, maxClients, transportMode, outbound, journal, log, heartbeat, rateLimit, cluster, compression);
+    }
+
+    public ServerConfig withLog(LogSettings log) {
+        return new ServerConfig(port, maxClients, transportMode, outbound, journal, log, heartbeat, rateLimit, cluster, compression);
+    }
+
+    public ServerConfig withRateLimit(RateLimitSettings rateLimit) {
+        return new ServerConfig(port, maxClients, transportMode, outbound, journal, log, heartbeat, rateLimit, cluster, compression);
+    }
+
+    // same keys as the launcher's --key=value flags, anything missing keeps its default
+    //   port, maxClients, transport (blocking|virtual|nio), queueCapacity, slowConsumerPolicy (drop_oldest|coalesce|disconnect),
+    //   disconnectThreshold, flushDelay (ms), journal (true|false), journalDir, replayCount,
+    //   logLevel (debug|info|warn|error), log (listener|file|both|none), logDir,
+    //   pingInterval, idleTimeout (seconds, 0 = off),
+    //   rateLimit, rateBurst, globalRateLimit, globalRateBurst (messages per second, 0 = off), rateLimitPolicy (delay|drop|disconnect)
+    //   nodeId, clusterPort (0 = no cluster), peers (host:port,host:port)
+    //   compressThreshold (bytes, 0 = off), compressLevel (1-9)
+    public static ServerConfig fromProperties(Properties properties) {
+        ServerConfig d = DEFAULT;
+        OutboundSettings outbound = new OutboundSettings(
+                intValue(properties, "queueCapacity", d.outbound().capacity()),
+                SlowConsumerPolicy.valueOf(properties.getProperty("slowConsumerPolicy", d.outbound().policy().name()).trim().toUpperCase(Locale.ROOT)),
+                intValue(properties, "disconnectThreshold", d.outbound().disconnectThreshold()),
+                intValue(properties, "flushDelay", d.outbound().flushDelayMillis())
+        );
+        JournalSettings journal = new JournalSettings(
+                Boolean.parseBoolean(properties.getProperty("journal", String.valueOf(d.journal().enabled())).trim()),
+                Path.of(properties.getProperty("journalDir", d.journal().directory().toString()).trim()),
+                intValue(properties, "replayCount", d.journal().replayCount())
+        );
+        String logTarget = properties.getProperty("log", d.log().toFile() ? "both" : "listener").trim().toLowerCase(Locale.ROOT);
+        if (!List.of("listener", "file", "both", "none").contains(logTarget)) {
+            throw new IllegalArgumentException("Invalid log target " + logTarget + ", expected listener, file, both or none");
+        }
+        LogSettings log = new LogSettings(
+                LogLevel.valueOf(properties.getProperty("logLevel", d.log().level().name()).trim().toUpperCase(Locale.ROOT)),
+                logTarget.equals("listener") || logTarget.equals("both"),
+                logTarget.equals("file") || logTarget.equals("both"),
+                Path.of(properties.getProperty("logDir", d.log().directory().toString()).trim())
+        );
+        HeartbeatSettings heartbeat = new HeartbeatSettings(
+                intValue(properties, "pingInterval", d.heartbeat().pingIntervalSeconds()),
+                intValue(properties, "idleTimeout", d.heartbeat().idleTimeoutSeconds())
+        );
+        RateLimitSettings rateLimit = new RateLimitSettings(
+                intValue(properties, "rateLimit", d.rateLimit().perClientRate()),
+                intValue(properties, "rateBurst", d.rateLimit().perClientBurst()),
+                intValue(properties, "globalRateLimit", d.rateLimit().globalRate()),
+                intValue(properties, "globalRateBurst", d.rateLimit().globalBurst()),
+                RateLimitPolicy.valueOf(properties.getProperty("rateLimitPolicy", d.rateLimit().policy().name()).trim().toUpperCase(Locale.ROOT))
+        );
+        ClusterSettings cluster = new ClusterSettings(
+                intValue(properties, "nodeId", d.cluster().nodeId()),
+                intValue(properties, "clusterPort", d.cluster().port()),
+                ClusterSettings.parsePeers(properties.getProperty("peers", ""))
+        );
+        CompressionSettings compression = new CompressionSettings(
+                intValue(properties, "compressThreshold", d.compression().thresholdBytes()),
+                intValue(properties, "compressLevel", d.compression().level())
+        );
+        return new ServerConfig(
+                intValue(properties, "port", d.port()),
+                intValue(properties, "maxClients", d.maxClients()),
+                TransportMode.valueOf(properties.getProperty("transport", d.transportMode().name()).trim().toUpperCase(Locale.ROOT)),
+                outbound,
+                journal,
+                log,
+                heartbeat,
+                rateLimit,
+                cluster,
+                compression
+        );
+    }
+
+    private static int intValue(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.log.LogLevel;
+
+// everything the server reports while running, the server tab shows it, the headless launcher prints it
+// called from I/O, fan-out and journal threads, implementations must be thread safe and must not block
+public interface ServerListener {
+
+    void logMessage(String message);
+
+    // from the log writer thread, with the time the event was logged at
+    default void logMessage(long timestamp, LogLevel level, String message) {
+        logMessage(message);
+    }
+
+    void incrementClientCount();
+
+    void decrementClientCount();
+}
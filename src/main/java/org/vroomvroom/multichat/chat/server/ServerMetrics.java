@@ -0,0 +1,97 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.metrics.EventRate;
+import org.vroomvroom.multichat.chat.metrics.LatencyHistogram;
+import org.vroomvroom.multichat.chat.metrics.MetricsRegistry;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// the server's own metrics, fields for the hot paths and the registry for whoever wants to look
+// "out" counts messages handed to a client's queue, what the slow consumer policy dropped later is in queue.dropped
+public class ServerMetrics {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    public final LongAdder messagesIn = registry.counter("messages.in");
+    public final LongAdder bytesIn = registry.counter("bytes.in");
+    public final LongAdder messagesOut = registry.counter("messages.out");
+    public final LongAdder bytesOut = registry.counter("bytes.out");
+    // /msg, delivered straight to the one recipient
+    public final LongAdder directMessages = registry.counter("messages.direct");
+    // writes actually issued to client sockets, one per batch however many messages it carried
+    public final LongAdder socketWrites = registry.counter("socket.writes");
+    public final LongAdder accepted = registry.counter("connections.accepted");
+    public final LongAdder rejected = registry.counter("connections.rejected");
+    // idle reaper, reaped is also in disconnects.idle_timeout
+    public final LongAdder pingsSent = registry.counter("heartbeat.pings");
+    public final LongAdder reaped = registry.counter("sessions.reaped");
+    // messages over a rate limit, by what the policy did with them
+    public final LongAdder throttledDelayed = registry.counter("throttled.delayed");
+    public final LongAdder throttledDropped = registry.counter("throttled.dropped");
+    // messages that went out deflated (counted once, however many clients got them) and the bytes that saved per copy
+    public final LongAdder compressed = registry.counter("compression.messages");
+    public final LongAdder compressionSaved = registry.counter("compression.saved_bytes");
+    // roster frames: a snapshot per admitted v5 client, a delta per window that had changes (shared by all subscribers)
+    public final LongAdder rosterSnapshots = registry.counter("roster.snapshots");
+    public final LongAdder rosterDeltas = registry.counter("roster.deltas");
+    // cluster relay: broadcasts sent to peers (once per peer), taken from peers, resent ones we already had,
+    // and ones a link's queue gave up on while its peer was down
+    public final LongAdder clusterForwarded = registry.counter("cluster.forwarded");
+    public final LongAdder clusterBatches = registry.counter("cluster.batches");
+    public final LongAdder clusterReceived = registry.counter("cluster.received");
+    public final LongAdder clusterDuplicates = registry.counter("cluster.duplicates");
+    public final LongAdder clusterDropped = registry.counter("cluster.dropped");
+    // /search, counted and timed once answered (index lookup plus reading the hits back from the journal)
+    public final LongAdder searchQueries = registry.counter("search.queries");
+    public final LatencyHistogram searchTime = registry.histogram("search.time");
+    public final EventRate acceptRate = registry.rate("connections.accepted", 10);
+    // one broadcast handed to every recipient's queue, on the fan-out thread
+    public final LatencyHistogram fanoutTime = registry.histogram("fanout.time");
+    private final Map<DisconnectReason, LongAdder> disconnects = new EnumMap<>(DisconnectReason.class);
+
+    ServerMetrics(List<ClientSession> clients) {
+        for (DisconnectReason reason : DisconnectReason.values()) {
+            disconnects.put(reason, registry.counter("disconnects." + reason.name().toLowerCase(Locale.ROOT)));
+        }
+        registry.gauge("clients.connected", clients::size);
+        registry.gauge("queue.depth.total", () -> {
+            long total = 0;
+            for (ClientSession client : clients) {
+                total += client.getQueueDepth();
+            }
+            return total;
+        });
+        registry.gauge("queue.depth.max", () -> {
+            long max = 0;
+            for (ClientSession client : clients) {
+                max = Math.max(max, client.getQueueDepth());
+            }
+            return max;
+        });
+        registry.gauge("queue.dropped", () -> {
+            long total = 0;
+            for (ClientSession client : clients) {
+                total += client.getDroppedCount();
+            }
+            return total;
+        });
+    }
+
+    public void accepted() {
+        accepted.increment();
+        acceptRate.mark();
+    }
+
+    public void disconnected(DisconnectReason reason) {
+        disconnects.get(reason).increment();
+    }
+
+    public MetricsRegistry registry() {
+        return registry;
+    }
+}
@@ -1,17 +1,27 @@
 package org.vroomvroom.multichat.chat.server;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import javafx.util.Duration;
+import org.vroomvroom.multichat.chat.client.ClientSession;
+import org.vroomvroom.multichat.chat.log.LogLevel;
+import org.vroomvroom.multichat.chat.metrics.MetricsRegistry;
+import org.vroomvroom.multichat.chat.ui.ChatMessage;
+import org.vroomvroom.multichat.chat.ui.MessageView;
+import org.vroomvroom.multichat.chat.ui.UiUpdateQueue;
+
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class ServerTabController {
+public class ServerTabController implements ServerListener {
 
     private BorderPane root;
     @FXML
@@ -23,16 +33,75 @@ public class ServerTabController {
     @FXML
     private TextField maxClientsField;
     @FXML
-    private TextArea logTextArea;
+    private MessageView logView;
     @FXML
     private Label statusLabel;
     @FXML
     private Label clientCountLabel;
+    @FXML
+    private ComboBox<TransportMode> transportModeBox;
+    @FXML
+    private TextField queueCapacityField;
+    @FXML
+    private ComboBox<SlowConsumerPolicy> slowConsumerPolicyBox;
+    @FXML
+    private TextField disconnectThresholdField;
+    @FXML
+    private TextField flushDelayField;
+    @FXML
+    private CheckBox journalCheck;
+    @FXML
+    private TextField replayCountField;
+    @FXML
+    private TextField pingIntervalField;
+    @FXML
+    private TextField idleTimeoutField;
+    @FXML
+    private TextField clientRateField;
+    @FXML
+    private TextField clientBurstField;
+    @FXML
+    private TextField globalRateField;
+    @FXML
+    private TextField globalBurstField;
+    @FXML
+    private ComboBox<RateLimitPolicy> rateLimitPolicyBox;
+    @FXML
+    private TextField compressThresholdField;
+    @FXML
+    private TextField nodeIdField;
+    @FXML
+    private TextField clusterPortField;
+    @FXML
+    private TextField peersField;
+    @FXML
+    private TextField linesPerFrameField;
+    @FXML
+    private TextField keepLinesField;
+    @FXML
+    private ComboBox<LogLevel> logLevelBox;
+    @FXML
+    private ComboBox<String> logTargetBox;
+    @FXML
+    private ListView<String> clientListView;
+    @FXML
+    private ListView<String> roomListView;
+    @FXML
+    private ListView<String> statsListView;
 
     private ChatServer chatServer;
     private ExecutorService serverExecutor;
     private AtomicInteger connectedClients = new AtomicInteger(0);
-    private SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
+    private static final String LOG_TO_VIEW = "View";
+    private static final String LOG_TO_FILE = "File";
+    private static final String LOG_TO_BOTH = "View + File";
+    private static final String LOG_TO_NONE = "Nowhere";
+    // log rows kept on screen, older ones are dropped
+    public static final int DEFAULT_LOG_RETENTION = 5_000;
+    // polls per-client queue depth, cheaper than pushing an update on every queued message
+    private Timeline clientListRefresh;
+    // log lines and label updates from the server threads, applied once per pulse
+    private final UiUpdateQueue<ChatMessage> uiQueue = new UiUpdateQueue<>(this::appendLogLines);
 
     public ServerTabController() {
         createUI();
@@ -62,6 +131,10 @@ public class ServerTabController {
         maxClientsField = new TextField("10");
         maxClientsField.setPrefWidth(80);
 
+        transportModeBox = new ComboBox<>();
+        transportModeBox.getItems().addAll(TransportMode.values());
+        transportModeBox.setValue(TransportMode.BLOCKING);
+
         statusLabel = new Label("Status: Stopped");
         statusLabel.setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
 
@@ -69,24 +142,166 @@ public class ServerTabController {
                 startServerButton, stopServerButton,
                 new Label("Port:"), portField,
                 new Label("Max Clients:"), maxClientsField,
+                new Label("Transport:"), transportModeBox,
                 statusLabel
         );
 
-        root.setTop(topBox);
+        // outbound queue settings
+        HBox queueBox = new HBox(10);
+        queueBox.setPadding(new Insets(0, 0, 10, 0));
+
+        queueCapacityField = new TextField(String.valueOf(OutboundSettings.DEFAULT.capacity()));
+        queueCapacityField.setPrefWidth(60);
+
+        slowConsumerPolicyBox = new ComboBox<>();
+        slowConsumerPolicyBox.getItems().addAll(SlowConsumerPolicy.values());
+        slowConsumerPolicyBox.setValue(OutboundSettings.DEFAULT.policy());
+
+        disconnectThresholdField = new TextField(String.valueOf(OutboundSettings.DEFAULT.disconnectThreshold()));
+        disconnectThresholdField.setPrefWidth(60);
+
+        // how long a client's writer may wait to batch more messages into one write
+        flushDelayField = new TextField(String.valueOf(OutboundSettings.DEFAULT.flushDelayMillis()));
+        flushDelayField.setPrefWidth(40);
+
+        // history journal
+        journalCheck = new CheckBox("Journal");
+        journalCheck.setSelected(JournalSettings.DEFAULT.enabled());
+
+        replayCountField = new TextField(String.valueOf(JournalSettings.DEFAULT.replayCount()));
+        replayCountField.setPrefWidth(60);
+        replayCountField.disableProperty().bind(journalCheck.selectedProperty().not().or(journalCheck.disabledProperty()));
+
+        queueBox.getChildren().addAll(
+                new Label("Client Queue:"), queueCapacityField,
+                new Label("When Full:"), slowConsumerPolicyBox,
+                new Label("Disconnect After:"), disconnectThresholdField,
+                new Label("Flush Delay (ms):"), flushDelayField,
+                journalCheck,
+                new Label("Replay Last:"), replayCountField
+        );
+
+        // server log, the level can change while running, where it goes only on start
+        HBox logBox = new HBox(10);
+        logBox.setPadding(new Insets(0, 0, 10, 0));
+
+        logLevelBox = new ComboBox<>();
+        logLevelBox.getItems().addAll(LogLevel.values());
+        logLevelBox.setValue(LogSettings.DEFAULT.level());
+        logLevelBox.setOnAction(e -> {
+            if (chatServer != null) {
+                chatServer.getLog().setLevel(logLevelBox.getValue());
+            }
+        });
+
+        logTargetBox = new ComboBox<>();
+        logTargetBox.getItems().addAll(LOG_TO_VIEW, LOG_TO_FILE, LOG_TO_BOTH, LOG_TO_NONE);
+        logTargetBox.setValue(LOG_TO_VIEW);
+
+        // heartbeats, seconds, 0 = off
+        pingIntervalField = new TextField(String.valueOf(HeartbeatSettings.DEFAULT.pingIntervalSeconds()));
+        pingIntervalField.setPrefWidth(50);
+        idleTimeoutField = new TextField(String.valueOf(HeartbeatSettings.DEFAULT.idleTimeoutSeconds()));
+        idleTimeoutField.setPrefWidth(50);
+
+        // smallest body deflated for clients that asked for compression, 0 = off
+        compressThresholdField = new TextField(String.valueOf(CompressionSettings.DEFAULT.thresholdBytes()));
+        compressThresholdField.setPrefWidth(60);
+
+        logBox.getChildren().addAll(
+                new Label("Log Level:"), logLevelBox,
+                new Label("Log To:"), logTargetBox,
+                new Label("Ping Every (s):"), pingIntervalField,
+                new Label("Idle Timeout (s):"), idleTimeoutField,
+                new Label("Compress Over (bytes):"), compressThresholdField
+        );
+
+        // rate limits, messages per second and burst, 0 = off
+        HBox limitBox = new HBox(10);
+        limitBox.setPadding(new Insets(0, 0, 10, 0));
+
+        clientRateField = new TextField(String.valueOf(RateLimitSettings.DEFAULT.perClientRate()));
+        clientRateField.setPrefWidth(50);
+        clientBurstField = new TextField(String.valueOf(RateLimitSettings.DEFAULT.perClientBurst()));
+        clientBurstField.setPrefWidth(50);
+        globalRateField = new TextField(String.valueOf(RateLimitSettings.DEFAULT.globalRate()));
+        globalRateField.setPrefWidth(60);
+        globalBurstField = new TextField(String.valueOf(RateLimitSettings.DEFAULT.globalBurst()));
+        globalBurstField.setPrefWidth(60);
+
+        rateLimitPolicyBox = new ComboBox<>();
+        rateLimitPolicyBox.getItems().addAll(RateLimitPolicy.values());
+        rateLimitPolicyBox.setValue(RateLimitSettings.DEFAULT.policy());
+
+        limitBox.getChildren().addAll(
+                new Label("Client Rate (/s):"), clientRateField,
+                new Label("Burst:"), clientBurstField,
+                new Label("Global Rate (/s):"), globalRateField,
+                new Label("Burst:"), globalBurstField,
+                new Label("Over Limit:"), rateLimitPolicyBox
+        );
+
+        // cluster, every node lists all the others; cluster port 0 = standalone
+        HBox clusterBox = new HBox(10);
+        clusterBox.setPadding(new Insets(0, 0, 10, 0));
+
+        nodeIdField = new TextField("1");
+        nodeIdField.setPrefWidth(40);
+        clusterPortField = new TextField("0");
+        clusterPortField.setPrefWidth(60);
+        peersField = new TextField();
+        peersField.setPromptText("localhost:9081,localhost:9082");
+        HBox.setHgrow(peersField, Priority.ALWAYS);
+
+        clusterBox.getChildren().addAll(
+                new Label("Node ID:"), nodeIdField,
+                new Label("Cluster Port:"), clusterPortField,
+                new Label("Peers:"), peersField
+        );
+
+        root.setTop(new VBox(topBox, queueBox, logBox, limitBox, clusterBox));
 
         // log area
         VBox centerBox = new VBox(5);
         centerBox.getChildren().add(new Label("Server Log:"));
 
-        logTextArea = new TextArea();
-        logTextArea.setEditable(false);
-        logTextArea.setWrapText(true);
-        logTextArea.setStyle("-fx-font-family: 'Monospaced';");
-        VBox.setVgrow(logTextArea, Priority.ALWAYS);
+        // the log always follows the newest line, like the TextArea did
+        logView = new MessageView(DEFAULT_LOG_RETENTION, () -> true);
+        VBox.setVgrow(logView, Priority.ALWAYS);
 
-        centerBox.getChildren().add(logTextArea);
+        centerBox.getChildren().add(logView);
         root.setCenter(centerBox);
 
+        // per client queue depth
+        VBox rightBox = new VBox(5);
+        rightBox.setPadding(new Insets(0, 0, 0, 10));
+        rightBox.getChildren().add(new Label("Clients (queued/capacity, dropped, throttled):"));
+
+        clientListView = new ListView<>();
+        clientListView.setPrefWidth(260);
+        VBox.setVgrow(clientListView, Priority.ALWAYS);
+
+        roomListView = new ListView<>();
+        roomListView.setPrefWidth(260);
+        roomListView.setPrefHeight(150);
+
+        // live server metrics, same numbers the headless endpoint serves
+        statsListView = new ListView<>();
+        statsListView.setPrefWidth(260);
+        statsListView.setPrefHeight(200);
+
+        rightBox.getChildren().addAll(
+                clientListView,
+                new Label("Rooms (members, messages, bytes out):"),
+                roomListView,
+                new Label("Stats:"),
+                statsListView
+        );
+        root.setRight(rightBox);
+
+        clientListRefresh = new Timeline(new KeyFrame(Duration.millis(500), e -> refreshClientList()));
+        clientListRefresh.setCycleCount(Timeline.INDEFINITE);
+
         // info
         HBox bottomBox = new HBox(10);
         bottomBox.setPadding(new Insets(10, 0, 0, 0));
@@ -98,10 +313,20 @@ public class ServerTabController {
         clearButton.setPrefWidth(80);
         clearButton.setOnAction(e -> clearLog());
 
+        // view settings, applied on Enter whether the server runs or not
+        linesPerFrameField = new TextField(String.valueOf(UiUpdateQueue.DEFAULT_MAX_ITEMS_PER_FRAME));
+        linesPerFrameField.setPrefWidth(60);
+        linesPerFrameField.setOnAction(e -> applyLinesPerFrame());
+        keepLinesField = new TextField(String.valueOf(DEFAULT_LOG_RETENTION));
+        keepLinesField.setPrefWidth(60);
+        keepLinesField.setOnAction(e -> applyRetention());
+
         bottomBox.getChildren().addAll(
                 new Label("Connected Clients:"),
                 clientCountLabel,
                 new Separator(),
+                new Label("Lines/Frame:"), linesPerFrameField,
+                new Label("Keep Lines:"), keepLinesField,
                 clearButton
         );
 
@@ -121,9 +346,52 @@ public class ServerTabController {
         try {
             int port = Integer.parseInt(portField.getText());
             int maxClients = Integer.parseInt(maxClientsField.getText());
+            TransportMode transportMode = transportModeBox.getValue();
+            OutboundSettings outboundSettings = new OutboundSettings(
+                    Integer.parseInt(queueCapacityField.getText()),
+                    slowConsumerPolicyBox.getValue(),
+                    Integer.parseInt(disconnectThresholdField.getText()),
+                    Integer.parseInt(flushDelayField.getText())
+            );
+            JournalSettings journalSettings = journalCheck.isSelected()
+                    ? new JournalSettings(true, JournalSettings.DEFAULT.directory(), Integer.parseInt(replayCountField.getText()))
+                    : JournalSettings.DISABLED;
+
+            String logTarget = logTargetBox.getValue();
+            LogSettings logSettings = new LogSettings(
+                    logLevelBox.getValue(),
+                    logTarget.equals(LOG_TO_VIEW) || logTarget.equals(LOG_TO_BOTH),
+                    logTarget.equals(LOG_TO_FILE) || logTarget.equals(LOG_TO_BOTH),
+                    LogSettings.DEFAULT.directory()
+            );
+
+            HeartbeatSettings heartbeatSettings = new HeartbeatSettings(
+                    Integer.parseInt(pingIntervalField.getText()),
+                    Integer.parseInt(idleTimeoutField.getText())
+            );
+
+            RateLimitSettings rateLimitSettings = new RateLimitSettings(
+                    Integer.parseInt(clientRateField.getText()),
+                    Integer.parseInt(clientBurstField.getText()),
+                    Integer.parseInt(globalRateField.getText()),
+                    Integer.parseInt(globalBurstField.getText()),
+                    rateLimitPolicyBox.getValue()
+            );
+
+            ClusterSettings clusterSettings = new ClusterSettings(
+                    Integer.parseInt(nodeIdField.getText()),
+                    Integer.parseInt(clusterPortField.getText()),
+                    ClusterSettings.parsePeers(peersField.getText())
+            );
+
+            CompressionSettings compressionSettings = new CompressionSettings(
+                    Integer.parseInt(compressThresholdField.getText()),
+                    CompressionSettings.DEFAULT.level()
+            );
 
             // server creation
-            chatServer = new ChatServer(port, maxClients, this);
+            chatServer = new ChatServer(new ServerConfig(port, maxClients, transportMode, outboundSettings, journalSettings,
+                    logSettings, heartbeatSettings, rateLimitSettings, clusterSettings, compressionSettings), this);
             serverExecutor = Executors.newSingleThreadExecutor();
             serverExecutor.execute(chatServer);
 
@@ -131,14 +399,38 @@ public class ServerTabController {
             stopServerButton.setDisable(false);
             portField.setDisable(true);
             maxClientsField.setDisable(true);
+            transportModeBox.setDisable(true);
+            setQueueSettingsDisabled(true);
+            clientListRefresh.play();
             updateStatus("Running", "green");
 
             logMessage("Server started on port " + port);
             logMessage("Maximum clients: " + maxClients);
+            logMessage("Transport: " + transportMode);
+            logMessage("Client queue: " + outboundSettings.capacity() + ", when full: " + outboundSettings.policy()
+                    + ", flush delay: " + outboundSettings.flushDelayMillis() + "ms");
+            logMessage("History: " + (journalSettings.enabled() ? "last " + journalSettings.replayCount() + " messages" : "off"));
+            logMessage("Log: " + logSettings.level() + " and up, to " + logTarget);
+            logMessage("Heartbeat: " + (heartbeatSettings.enabled()
+                    ? "ping after " + heartbeatSettings.pingIntervalSeconds() + "s, idle timeout " + heartbeatSettings.idleTimeoutSeconds() + "s"
+                    : "off"));
+            logMessage("Rate limit: " + (rateLimitSettings.enabled()
+                    ? limitText(rateLimitSettings.perClientRate(), rateLimitSettings.perClientBurst()) + " per client, "
+                    + limitText(rateLimitSettings.globalRate(), rateLimitSettings.globalBurst()) + " overall, over it: "
+                    + rateLimitSettings.policy()
+                    : "off"));
+            logMessage("Compression: " + (compressionSettings.enabled()
+                    ? "bodies over " + compressionSettings.thresholdBytes() + " bytes, for clients that ask"
+                    : "off"));
+            logMessage("Cluster: " + (clusterSettings.enabled()
+                    ? "node " + clusterSettings.nodeId() + " on port " + clusterSettings.port() + ", peers " + clusterSettings.peers()
+                    : "off"));
             logMessage("------------------------------------------------");
 
         } catch (NumberFormatException e) {
-            showAlert("Invalid Input", "Please enter valid numbers for port and max clients");
+            showAlert("Invalid Input", "Please enter valid numbers for port, max clients, queue, heartbeat, rate limit, compression and cluster settings");
+        } catch (IllegalArgumentException e) {
+            showAlert("Invalid Input", e.getMessage());
         } catch (Exception e) {
             showAlert("Server Error", "Failed to start server: " + e.getMessage());
         }
@@ -160,6 +452,12 @@ public class ServerTabController {
         stopServerButton.setDisable(true);
         portField.setDisable(false);
         maxClientsField.setDisable(false);
+        transportModeBox.setDisable(false);
+        setQueueSettingsDisabled(false);
+        clientListRefresh.stop();
+        clientListView.getItems().clear();
+        roomListView.getItems().clear();
+        statsListView.getItems().clear();
         updateStatus("Stopped", "red");
 
         logMessage("Server stopped");
@@ -167,35 +465,130 @@ public class ServerTabController {
         updateClientCount(0);
     }
 
+    private static String limitText(int rate, int burst) {
+        return rate > 0 ? rate + "/s (burst " + burst + ")" : "unlimited";
+    }
+
+    private void setQueueSettingsDisabled(boolean disabled) {
+        queueCapacityField.setDisable(disabled);
+        slowConsumerPolicyBox.setDisable(disabled);
+        disconnectThresholdField.setDisable(disabled);
+        flushDelayField.setDisable(disabled);
+        journalCheck.setDisable(disabled);
+        logTargetBox.setDisable(disabled);
+        pingIntervalField.setDisable(disabled);
+        idleTimeoutField.setDisable(disabled);
+        clientRateField.setDisable(disabled);
+        clientBurstField.setDisable(disabled);
+        globalRateField.setDisable(disabled);
+        globalBurstField.setDisable(disabled);
+        rateLimitPolicyBox.setDisable(disabled);
+        compressThresholdField.setDisable(disabled);
+        nodeIdField.setDisable(disabled);
+        clusterPortField.setDisable(disabled);
+        peersField.setDisable(disabled);
+    }
+
+    private void refreshClientList() {
+        if (chatServer == null) {
+            return;
+        }
+        clientListView.getItems().setAll(
+                chatServer.getClients().stream()
+                        .map(client -> client.getClientName() + " (" + client.getClientAddress() + ") "
+                                + roomOf(client) + " "
+                                + client.getQueueDepth() + "/" + client.getQueueCapacity()
+                                + ", " + client.getDroppedCount()
+                                + ", " + client.getThrottledCount())
+                        .toList()
+        );
+        roomListView.getItems().setAll(
+                chatServer.getRooms().all().stream()
+                        .sorted(Comparator.comparing(ChatRoom::getName))
+                        .map(room -> "#" + room.getName() + ": " + room.getMemberCount()
+                                + ", " + room.getMessageCount() + ", " + room.getBytesOut())
+                        .toList()
+        );
+        statsListView.getItems().setAll(
+                chatServer.getMetrics().registry().snapshot().entrySet().stream()
+                        .map(entry -> entry.getKey() + ": " + MetricsRegistry.format(entry.getValue()))
+                        .toList()
+        );
+    }
+
+    private static String roomOf(ClientSession client) {
+        ChatRoom room = client.getRoom();
+        return room == null ? "-" : "#" + room.getName();
+    }
+
     private void clearLog() {
-        logTextArea.clear();
+        logView.clear();
     }
 
+    @Override
     public void logMessage(String message) {
-        Platform.runLater(() -> {
-            String timestamp = dateFormat.format(new Date());
-            logTextArea.appendText("[" + timestamp + "] " + message + "\n");
-        });
+        uiQueue.add(ChatMessage.now("SERVER", message));
+    }
+
+    // the server's own log, already batched by its writer thread
+    @Override
+    public void logMessage(long timestamp, LogLevel level, String message) {
+        uiQueue.add(new ChatMessage(timestamp, LogLevel.WARN.includes(level) ? level.name() : "SERVER", message));
+    }
+
+    // one list change per pulse instead of one per line
+    private void appendLogLines(List<ChatMessage> messages) {
+        logView.append(messages);
+    }
+
+    public void setLogRetention(int retention) {
+        // fail here rather than on the fx thread
+        if (retention < 1) {
+            throw new IllegalArgumentException("Retention must be at least 1");
+        }
+        Platform.runLater(() -> logView.setRetention(retention));
+    }
+
+    private void applyRetention() {
+        try {
+            setLogRetention(Integer.parseInt(keepLinesField.getText().trim()));
+        } catch (IllegalArgumentException e) {
+            keepLinesField.setText(String.valueOf(logView.getRetention()));
+            showAlert("Invalid Input", "Lines kept must be a number, at least 1");
+        }
+    }
+
+    public void setMaxLogLinesPerFrame(int maxLines) {
+        uiQueue.setMaxItemsPerFrame(maxLines);
+    }
+
+    private void applyLinesPerFrame() {
+        try {
+            setMaxLogLinesPerFrame(Integer.parseInt(linesPerFrameField.getText().trim()));
+        } catch (IllegalArgumentException e) {
+            linesPerFrameField.setText(String.valueOf(uiQueue.getMaxItemsPerFrame()));
+            showAlert("Invalid Input", "Lines per frame must be a number, at least 1");
+        }
     }
 
     public void updateClientCount(int count) {
-        Platform.runLater(() -> {
-            clientCountLabel.setText(String.valueOf(count));
-        });
+        uiQueue.postLatest(clientCountLabel, () -> clientCountLabel.setText(String.valueOf(count)));
     }
 
+    @Override
     public void incrementClientCount() {
         int count = connectedClients.incrementAndGet();
         updateClientCount(count);
     }
 
+    @Override
     public void decrementClientCount() {
         int count = connectedClients.decrementAndGet();
         updateClientCount(count);
     }
 
     private void updateStatus(String status, String color) {
-        Platform.runLater(() -> {
+        uiQueue.postLatest(statusLabel, () -> {
             statusLabel.setText("Status: " + status);
             statusLabel.setStyle("-fx-text-fill: " + color + "; -fx-font-weight: bold;");
         });
@@ -0,0 +1,76 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.vroomvroom.multichat.chat.client.ClientSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+// who is online by client id and by name, so a direct message is one map lookup instead of a walk over every client
+// names are unique ignoring case: a second "alice" becomes "alice-2" at handshake time, always - ids are whatever
+// the client sent and every app instance numbers its tabs from 1, so a matching id proves nothing about who it is
+// and must not get a live session kicked; an id maps to everybody online with it, oldest first, and #id reaches the
+// oldest, so when that one leaves the next one takes over
+// both maps only ever drop the exact session they hold, a leaving session can't take a newcomer's entry with it
+public class SessionIndex {
+
+    // longer names are cut at handshake, "-N" suffixes included, so a /msg lookup never tries a longer prefix
+    public static final int MAX_NAME_LENGTH = 32;
+
+    private final ConcurrentHashMap<String, ClientSession> byName = new ConcurrentHashMap<>();
+    // immutable lists swapped per key by merge/computeIfPresent, readers never see one half changed; almost always one entry
+    private final ConcurrentHashMap<Integer, List<ClientSession>> byId = new ConcurrentHashMap<>();
+
+    // handshake thread, returns the name the session ended up with
+    public String register(ClientSession session, String wantedName) {
+        String name = clip(wantedName, MAX_NAME_LENGTH);
+        for (int suffix = 2; byName.putIfAbsent(key(name), session) != null; suffix++) {
+            String tail = "-" + suffix;
+            name = clip(wantedName, MAX_NAME_LENGTH - tail.length()) + tail;
+        }
+        byId.merge(session.getClientId(), List.of(session), SessionIndex::append);
+        return name;
+    }
+
+    // disconnect, after the session is marked gone
+    public void unregister(ClientSession session) {
+        byName.remove(key(session.getClientName()), session);
+        byId.computeIfPresent(session.getClientId(), (id, sessions) -> {
+            List<ClientSession> rest = sessions.stream().filter(s -> s != session).toList();
+            return rest.isEmpty() ? null : rest;
+        });
+    }
+
+    private static List<ClientSession> append(List<ClientSession> sessions, List<ClientSession> added) {
+        List<ClientSession> all = new ArrayList<>(sessions);
+        all.addAll(added);
+        return List.copyOf(all);
+    }
+
+    public ClientSession byName(String name) {
+        return byName.get(key(name));
+    }
+
+    public ClientSession byId(int clientId) {
+        List<ClientSession> sessions = byId.get(clientId);
+        return sessions == null ? null : sessions.get(0);
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    // never splits a surrogate pair
+    public static String clip(String name, int maxLength) {
+        if (name.length() <= maxLength) {
+            return name;
+        }
+        int end = Character.isHighSurrogate(name.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+        return name.substring(0, end);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,19 @@
+package org.vroomvroom.multichat.chat.server;
+
+// what a client's outbound queue does once the client stops keeping up
+public enum SlowConsumerPolicy {
+    DROP_OLDEST("Drop oldest"),
+    COALESCE("Coalesce backlog"),
+    DISCONNECT("Disconnect");
+
+    private final String label;
+
+    SlowConsumerPolicy(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,67 @@
+package org.vroomvroom.multichat.chat.server;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+// hashed timer wheel, one slot per tick and deadlines further out than a turn just stay for another round
+// scheduling is an add to a slot and advancing only looks at the slots that passed, whatever the number of entries
+// not thread safe, the owner thread schedules and advances
+public class TimerWheel<T> {
+
+    private record Entry<T>(T item, long deadlineTick) {
+    }
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final ArrayDeque<Entry<T>>[] slots;
+    private final int mask;
+    // last tick advance() handled
+    private long currentTick = 0;
+    private int size = 0;
+
+    public TimerWheel(long tickNanos, int slotCount, long startNanos) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two");
+        }
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+        // no generic arrays in Java, the cast is safe since only Entry<T>s ever go in
+        @SuppressWarnings("unchecked")
+        ArrayDeque<Entry<T>>[] slots = (ArrayDeque<Entry<T>>[]) new ArrayDeque<?>[slotCount];
+        this.slots = slots;
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.mask = slotCount - 1;
+    }
+
+    // rounded up to the next tick, never earlier than the next advance
+    public void schedule(T item, long deadlineNanos) {
+        long tick = Math.max(currentTick + 1, Math.ceilDiv(deadlineNanos - startNanos, tickNanos));
+        slots[(int) (tick & mask)].add(new Entry<>(item, tick));
+        size++;
+    }
+
+    // hands everything due by now to expired, in tick order; expired may schedule again
+    public void advance(long nowNanos, Consumer<T> expired) {
+        long targetTick = (nowNanos - startNanos) / tickNanos;
+        while (currentTick < targetTick) {
+            currentTick++;
+            ArrayDeque<Entry<T>> slot = slots[(int) (currentTick & mask)];
+            // only what was there before, anything expired re-adds lands in a later tick
+            for (int i = slot.size(); i > 0; i--) {
+                Entry<T> entry = slot.poll();
+                if (entry.deadlineTick() <= currentTick) {
+                    size--;
+                    expired.accept(entry.item());
+                } else {
+                    slot.add(entry);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
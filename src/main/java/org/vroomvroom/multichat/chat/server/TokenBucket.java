@@ -0,0 +1,50 @@
+package org.vroomvroom.multichat.chat.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// token bucket kept as the time its next token is due (GCRA), the clock does the refilling
+// one CAS per message and no lock, so the global bucket shared by every reader is fine too
+public class TokenBucket {
+
+    private final long intervalNanos;
+    // how far the due time may run ahead of the clock, burst tokens' worth
+    private final long capacityNanos;
+    private final AtomicLong dueNanos;
+
+    public TokenBucket(int perSecond, int burst) {
+        this.intervalNanos = 1_000_000_000L / perSecond;
+        this.capacityNanos = intervalNanos * burst;
+        // starts full
+        this.dueNanos = new AtomicLong(System.nanoTime());
+    }
+
+    // takes a token if there is one, 0 on success, otherwise nanos until there is one (nothing taken)
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long due = dueNanos.get();
+            long next = Math.max(due - nowNanos, 0) + intervalNanos;
+            if (next > capacityNanos) {
+                return next - capacityNanos;
+            }
+            if (dueNanos.compareAndSet(due, nowNanos + next)) {
+                return 0;
+            }
+        }
+    }
+
+    // gives back a token tryAcquire took, for a message that got rejected further on
+    public void refund() {
+        dueNanos.addAndGet(-intervalNanos);
+    }
+
+    // takes a token whether there is one or not, returns how long the caller should hold off to pay the debt back
+    public long reserve(long nowNanos) {
+        while (true) {
+            long due = dueNanos.get();
+            long next = Math.max(due - nowNanos, 0) + intervalNanos;
+            if (dueNanos.compareAndSet(due, nowNanos + next)) {
+                return Math.max(next - capacityNanos, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.vroomvroom.multichat.chat.server;
+
+// how the server talks to its clients, picked in the server tab before starting
+public enum TransportMode {
+    BLOCKING("Blocking (thread per client)"),
+    VIRTUAL("Virtual threads (virtual thread per client)"),
+    NIO("NIO (selector event loops)");
+
+    private final String label;
+
+    TransportMode(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
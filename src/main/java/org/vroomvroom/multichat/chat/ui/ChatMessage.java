@@ -0,0 +1,9 @@
+package org.vroomvroom.multichat.chat.ui;
+
+// one line in a chat or log view, timestamp is epoch millis
+public record ChatMessage(long timestamp, String sender, String text) {
+
+    public static ChatMessage now(String sender, String text) {
+        return new ChatMessage(System.currentTimeMillis(), sender, text);
+    }
+}
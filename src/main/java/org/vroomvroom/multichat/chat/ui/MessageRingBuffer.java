@@ -0,0 +1,124 @@
+package org.vroomvroom.multichat.chat.ui;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.Collection;
+import java.util.List;
+
+// fixed capacity list for a ListView, the oldest messages fall off the front once it is full
+// memory stays flat no matter how long the tab runs and adding never shifts the backing array
+// FX thread only, like any other ObservableList bound to a control
+public class MessageRingBuffer extends ObservableListBase<ChatMessage> {
+
+    private ChatMessage[] ring;
+    private int head = 0;
+    private int size = 0;
+
+    public MessageRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Retention must be at least 1 message");
+        }
+        this.ring = new ChatMessage[capacity];
+    }
+
+    @Override
+    public ChatMessage get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return ring[(head + index) % ring.length];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    // one change event for the whole batch, however many messages fall off the front
+    @Override
+    public boolean addAll(Collection<? extends ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return false;
+        }
+
+        beginChange();
+        try {
+            int skip = Math.max(0, messages.size() - ring.length);
+            int index = 0;
+            for (ChatMessage message : messages) {
+                if (index++ < skip) {
+                    continue;
+                }
+                if (size == ring.length) {
+                    ChatMessage removed = ring[head];
+                    ring[head] = message;
+                    head = (head + 1) % ring.length;
+                    nextRemove(0, removed);
+                    nextAdd(size - 1, size);
+                } else {
+                    ring[(head + size) % ring.length] = message;
+                    nextAdd(size, size + 1);
+                    size++;
+                }
+            }
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean add(ChatMessage message) {
+        return addAll(List.of(message));
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        beginChange();
+        try {
+            List<ChatMessage> removed = List.copyOf(this);
+            ring = new ChatMessage[ring.length];
+            head = 0;
+            size = 0;
+            nextRemove(0, removed);
+        } finally {
+            endChange();
+        }
+    }
+
+    // keeps the newest messages that still fit
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Retention must be at least 1 message");
+        }
+        if (capacity == ring.length) {
+            return;
+        }
+
+        int keep = Math.min(size, capacity);
+        int drop = size - keep;
+        beginChange();
+        try {
+            List<ChatMessage> removed = drop > 0 ? List.copyOf(subList(0, drop)) : List.of();
+            ChatMessage[] resized = new ChatMessage[capacity];
+            for (int i = 0; i < keep; i++) {
+                resized[i] = get(drop + i);
+            }
+            ring = resized;
+            head = 0;
+            size = keep;
+            if (!removed.isEmpty()) {
+                nextRemove(0, removed);
+            }
+        } finally {
+            endChange();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.vroomvroom.multichat.chat.ui;
+
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+
+import org.vroomvroom.multichat.chat.log.TimestampFormat;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+// virtualized replacement for the ever growing TextArea logs
+// ListView only builds cells for the rows on screen, the ring buffer caps how many rows exist at all
+public class MessageView extends ListView<ChatMessage> {
+
+    private final MessageRingBuffer messages;
+    private final BooleanSupplier autoScroll;
+
+    public MessageView(int retention, BooleanSupplier autoScroll) {
+        this.messages = new MessageRingBuffer(retention);
+        this.autoScroll = autoScroll;
+        setItems(messages);
+        setStyle("-fx-font-family: 'Monospaced';");
+        setCellFactory(view -> new MessageCell());
+    }
+
+    // FX thread
+    public void append(List<ChatMessage> batch) {
+        messages.addAll(batch);
+        if (autoScroll.getAsBoolean() && !messages.isEmpty()) {
+            scrollTo(messages.size() - 1);
+        }
+    }
+
+    public void clear() {
+        messages.clear();
+    }
+
+    public void setRetention(int retention) {
+        messages.setCapacity(retention);
+    }
+
+    public int getRetention() {
+        return messages.capacity();
+    }
+
+    private class MessageCell extends ListCell<ChatMessage> {
+
+        MessageCell() {
+            // wrap like the old TextArea did, zero pref width lets the cell follow the list width
+            setWrapText(true);
+            setPrefWidth(0);
+        }
+
+        @Override
+        protected void updateItem(ChatMessage message, boolean empty) {
+            super.updateItem(message, empty);
+            if (empty || message == null) {
+                setText(null);
+            } else {
+                // the time the line arrived, not when this cell got round to showing it
+                setText("[" + TimestampFormat.TIME.format(message.timestamp()) + "] " + message.text());
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.vroomvroom.multichat.chat.ui;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// collects UI work from any thread and applies it at most once per JavaFX pulse (~16 ms)
+// items are handed to the sink as one batch, "latest value" updates (labels, counters) only keep the newest one
+// the timer only runs while there is something pending, an idle tab costs nothing
+public class UiUpdateQueue<T> {
+
+    public static final int DEFAULT_MAX_ITEMS_PER_FRAME = 500;
+
+    private final ConcurrentLinkedQueue<T> items = new ConcurrentLinkedQueue<>();
+    private final Map<Object, Runnable> latest = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Consumer<List<T>> sink;
+    private final AnimationTimer timer;
+    private volatile int maxItemsPerFrame;
+
+    public UiUpdateQueue(Consumer<List<T>> sink) {
+        this(sink, DEFAULT_MAX_ITEMS_PER_FRAME);
+    }
+
+    public UiUpdateQueue(Consumer<List<T>> sink, int maxItemsPerFrame) {
+        this.sink = sink;
+        setMaxItemsPerFrame(maxItemsPerFrame);
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                flush();
+            }
+        };
+    }
+
+    // any thread
+    public void add(T item) {
+        items.offer(item);
+        wake();
+    }
+
+    // any thread, a newer update under the same key replaces one that has not run yet
+    public void postLatest(Object key, Runnable update) {
+        latest.put(key, update);
+        wake();
+    }
+
+    private void wake() {
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(timer::start);
+        }
+    }
+
+    // FX thread, once per pulse; anything above the cap waits for the next pulse
+    private void flush() {
+        for (Object key : latest.keySet()) {
+            Runnable update = latest.remove(key);
+            if (update != null) {
+                update.run();
+            }
+        }
+
+        int max = maxItemsPerFrame;
+        List<T> batch = new ArrayList<>(Math.min(max, 64));
+        T item;
+        while (batch.size() < max && (item = items.poll()) != null) {
+            batch.add(item);
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+
+        if (items.isEmpty() && latest.isEmpty()) {
+            timer.stop();
+            scheduled.set(false);
+            // something may have slipped in between the check and the reset
+            if (!items.isEmpty() || !latest.isEmpty()) {
+                wake();
+            }
+        }
+    }
+
+    public void setMaxItemsPerFrame(int maxItemsPerFrame) {
+        if (maxItemsPerFrame < 1) {
+            throw new IllegalArgumentException("Need at least one item per frame");
+        }
+        this.maxItemsPerFrame = maxItemsPerFrame;
+    }
+
+    public int getMaxItemsPerFrame() {
+        return maxItemsPerFrame;
+    }
+}
@@ -0,0 +1,124 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostingListTest {
+
+    @Test
+    void countsAroundBlockBoundaries() {
+        for (int n : new int[]{1, 127, 128, 129, 257}) {
+            PostingList list = new PostingList();
+            for (int doc = 0; doc < n; doc++) {
+                list.add(doc * 3);
+            }
+            assertEquals(n, list.count(), "count for " + n);
+            assertEquals(descending(n, 3), walk(list), "docs for " + n);
+        }
+    }
+
+    @Test
+    void repeatedAndOlderDocsAreIgnored() {
+        PostingList list = new PostingList();
+        list.add(5);
+        list.add(5);
+        list.add(3);
+        list.add(9);
+        assertEquals(2, list.count());
+        assertEquals(List.of(9, 5), walk(list));
+    }
+
+    @Test
+    void atMostFindsTheLargestDocNotAboveTarget() {
+        PostingList list = new PostingList();
+        // big gaps so the varints take several bytes, and enough docs for three blocks
+        for (int doc = 0; doc < 300; doc++) {
+            list.add(10 + doc * 100_000);
+        }
+        PostingList.Cursor cursor = list.cursor();
+        assertEquals(10 + 299 * 100_000, cursor.atMost(Integer.MAX_VALUE));
+        assertEquals(10 + 200 * 100_000, cursor.atMost(10 + 200 * 100_000 + 99_999));
+        // exactly the first doc of the second block
+        assertEquals(10 + 128 * 100_000, cursor.atMost(10 + 128 * 100_000));
+        assertEquals(10 + 127 * 100_000, cursor.atMost(10 + 128 * 100_000 - 1));
+        assertEquals(10, cursor.atMost(10));
+        assertEquals(-1, cursor.atMost(9));
+    }
+
+    @Test
+    void atMostOnAnEmptyList() {
+        assertEquals(-1, new PostingList().cursor().atMost(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void intersectsSeveralTerms() {
+        PostingList twos = new PostingList();
+        PostingList threes = new PostingList();
+        PostingList fives = new PostingList();
+        for (int doc = 0; doc <= 1000; doc++) {
+            if (doc % 2 == 0) {
+                twos.add(doc);
+            }
+            if (doc % 3 == 0) {
+                threes.add(doc);
+            }
+            if (doc % 5 == 0) {
+                fives.add(doc);
+            }
+        }
+        assertEquals(descending(34, 30), intersect(fives, threes, twos));
+        // a term that only shows up once still finds its one match
+        PostingList once = new PostingList();
+        once.add(600);
+        assertEquals(List.of(600), intersect(once, fives, threes, twos));
+    }
+
+    // every doc, newest first, one atMost per step like a single-term search does
+    private static List<Integer> walk(PostingList list) {
+        List<Integer> docs = new ArrayList<>();
+        PostingList.Cursor cursor = list.cursor();
+        for (int doc = cursor.atMost(Integer.MAX_VALUE); doc >= 0; doc = cursor.atMost(doc - 1)) {
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    // the same leapfrog SearchIndex runs, smallest list first
+    private static List<Integer> intersect(PostingList... lists) {
+        PostingList.Cursor[] cursors = new PostingList.Cursor[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            cursors[i] = lists[i].cursor();
+        }
+        List<Integer> hits = new ArrayList<>();
+        int target = Integer.MAX_VALUE;
+        while (target >= 0) {
+            int doc = cursors[0].atMost(target);
+            if (doc < 0) {
+                break;
+            }
+            int next = doc;
+            for (int i = 1; i < cursors.length && next == doc; i++) {
+                next = cursors[i].atMost(doc);
+            }
+            if (next == doc) {
+                hits.add(doc);
+                target = doc - 1;
+            } else {
+                target = next;
+            }
+        }
+        return hits;
+    }
+
+    private static List<Integer> descending(int n, int step) {
+        List<Integer> docs = new ArrayList<>();
+        for (int i = n - 1; i >= 0; i--) {
+            docs.add(i * step);
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,85 @@
+package org.vroomvroom.multichat.chat.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SearchQueryTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void wordsOnly() {
+        SearchQuery query = SearchQuery.parse("  Hello, World  a ", NOW);
+        // lowercased, punctuation split off, single letters dropped
+        assertEquals(List.of("hello", "world"), query.words());
+        assertNull(query.sender());
+        assertNull(query.room());
+        assertEquals(Long.MIN_VALUE, query.after());
+        assertEquals(Long.MAX_VALUE, query.before());
+    }
+
+    @Test
+    void senderAndRoomFilters() {
+        SearchQuery query = SearchQuery.parse("FROM:Bob in:#General deploy", NOW);
+        assertEquals(List.of("deploy"), query.words());
+        assertEquals("bob", query.sender());
+        assertEquals("general", query.room());
+        assertEquals("general", SearchQuery.parse("in:general", NOW).room());
+    }
+
+    @Test
+    void filterWithoutWords() {
+        SearchQuery query = SearchQuery.parse("from:alice", NOW);
+        assertEquals(List.of(), query.words());
+        assertEquals("alice", query.sender());
+    }
+
+    @Test
+    void sinceAges() {
+        assertEquals(NOW - 30 * 60_000L, SearchQuery.parse("x1 since:30m", NOW).after());
+        assertEquals(NOW - 12 * 3_600_000L, SearchQuery.parse("x1 since:12H", NOW).after());
+        assertEquals(NOW - 7 * 86_400_000L, SearchQuery.parse("x1 since:7d", NOW).after());
+    }
+
+    @Test
+    void dateFilters() {
+        SearchQuery query = SearchQuery.parse("x1 after:2024-05-01 before:2024-05-31", NOW);
+        assertEquals(startOf("2024-05-01"), query.after());
+        assertEquals(startOf("2024-05-31"), query.before());
+    }
+
+    @Test
+    void repeatedFiltersNarrow() {
+        SearchQuery query = SearchQuery.parse("x1 after:2024-01-01 after:2024-03-01 before:2024-09-01 before:2024-06-01", NOW);
+        assertEquals(startOf("2024-03-01"), query.after());
+        assertEquals(startOf("2024-06-01"), query.before());
+    }
+
+    @Test
+    void badFiltersThrow() {
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("x1 since:30", NOW));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("x1 since:30w", NOW));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("x1 since:-5m", NOW));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("x1 since:100000d", NOW));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("x1 after:2024-13-01", NOW));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("x1 before:yesterday", NOW));
+    }
+
+    @Test
+    void needsSomethingToLookFor() {
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("", NOW));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("a since:1h", NOW));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("from: in:#", NOW));
+    }
+
+    private static long startOf(String day) {
+        return LocalDate.parse(day).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}